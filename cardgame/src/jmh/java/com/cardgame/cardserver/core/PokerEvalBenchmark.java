@@ -0,0 +1,67 @@
+package com.cardgame.cardserver.core;
+
+import com.cardgame.cardserver.core.poker.PokerEval;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-hand evaluator cost: one 5-card evaluation, best 5 of 7 for showdown, and the AI's
+ * evaluateStrength on 3..7 card stud hands. Cycles through a fixed pool of dealt hands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PokerEvalBenchmark {
+
+    private static final int POOL = 1024;
+
+    private final SevenPokerGame game = new SevenPokerGame();
+    private List<List<Card>> five;
+    private List<List<Card>> seven;
+    private List<List<Card>> partial;
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        five = new ArrayList<>(POOL);
+        seven = new ArrayList<>(POOL);
+        partial = new ArrayList<>(POOL);
+        Deck deck = new Deck(1);
+        for (int n = 0; n < POOL; n++) {
+            deck.shuffle();
+            List<Card> hand = new ArrayList<>(7);
+            for (int c = 0; c < 7; c++) {
+                hand.add(deck.draw());
+            }
+            seven.add(hand);
+            five.add(new ArrayList<>(hand.subList(0, 5)));
+            partial.add(new ArrayList<>(hand.subList(0, 3 + n % 5)));
+        }
+    }
+
+    private int next() {
+        i = (i + 1) & (POOL - 1);
+        return i;
+    }
+
+    @Benchmark
+    public PokerEval.HandScore evaluateFive() {
+        return PokerEval.evaluate(five.get(next()));
+    }
+
+    @Benchmark
+    public long bestFiveOfSeven() {
+        return game.bestFiveScore(seven.get(next()));
+    }
+
+    @Benchmark
+    public double evaluateStrength() {
+        return game.evaluateStrength(partial.get(next()));
+    }
+}
@@ -0,0 +1,108 @@
+package com.cardgame.cardserver.core;
+
+import com.cardgame.cardserver.core.wallet.WalletLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Wallet throughput under contention, plus a lost-update check: every trial compares the sum of the
+ * balances against the number of unit deltas applied and fails the run if they differ. With
+ * {@code durability=wal} the store logs to a {@link WalletLog} in a temp directory, and the trial also
+ * fails if recovering that directory doesn't give back the same balances.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class SessionStoreBenchmark {
+
+    // 1 = every thread settles into the same wallet (worst case), 6 = one room, 1024 = spread out
+    @Param({"1", "6", "1024"})
+    public int users;
+
+    // off = memory only, wal = memory-mapped write-ahead log with group commit
+    @Param({"off", "wal"})
+    public String durability;
+
+    private Path walDir;
+
+    private String[] names;
+    private Map<String, Integer> settlement;
+    private final LongAdder applied = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String prefix = "bench-" + System.nanoTime() + "-";
+        names = new String[users];
+        settlement = new LinkedHashMap<>();
+        for (int i = 0; i < users; i++) {
+            names[i] = prefix + i;
+            SessionStore.set(names[i], 0);
+            if (i < 6) {
+                settlement.put(names[i], 1);
+            }
+        }
+        applied.reset();
+        if (durability.equals("wal")) {
+            walDir = Files.createTempDirectory("wallet-bench");
+            SessionStore.open(WalletLog.defaults(walDir));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void verify() throws IOException {
+        long sum = 0;
+        for (String name : names) {
+            sum += SessionStore.get(name);
+        }
+        if (sum != applied.sum()) {
+            throw new IllegalStateException("lost updates: balances sum " + sum + ", applied " + applied.sum());
+        }
+        if (walDir != null) {
+            SessionStore.close();
+            Map<String, Long> recovered = WalletLog.read(walDir, SessionStore.INITIAL_BALANCE);
+            for (String name : names) {
+                if (recovered.getOrDefault(name, (long) SessionStore.INITIAL_BALANCE) != SessionStore.get(name)) {
+                    throw new IllegalStateException("wallet log lost " + name);
+                }
+            }
+            try (Stream<Path> files = Files.list(walDir)) {
+                for (Path p : files.toList()) {
+                    Files.delete(p);
+                }
+            }
+            Files.delete(walDir);
+            walDir = null;
+        }
+    }
+
+    @Benchmark
+    public int add() {
+        String user = names[ThreadLocalRandom.current().nextInt(names.length)];
+        applied.increment();
+        return SessionStore.add(user, 1);
+    }
+
+    @Benchmark
+    public Map<String, Integer> applyAllRoom() {
+        applied.add(settlement.size());
+        return SessionStore.applyAll(settlement);
+    }
+
+    @Benchmark
+    public int get() {
+        return SessionStore.get(names[ThreadLocalRandom.current().nextInt(names.length)]);
+    }
+}
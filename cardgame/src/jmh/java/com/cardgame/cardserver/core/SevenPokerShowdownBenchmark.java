@@ -0,0 +1,85 @@
+package com.cardgame.cardserver.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table-level paths: picking the street leader from open cards, a full showdown over every
+ * contender, and a whole hand played out by AI seats (start, every street, showdown).
+ * Seven is the most a single 52-card deck can deal seven cards to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SevenPokerShowdownBenchmark {
+
+    private static final int TABLES = 64;
+
+    @Param({"2", "4", "6", "7"})
+    public int players;
+
+    private final SevenPokerGame game = new SevenPokerGame();
+    private final List<SevenPokerGame.State> tables = new ArrayList<>(TABLES);
+    private List<String> aiSeats;
+    private SevenPokerGame.State aiTable;
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Deck deck = new Deck(1);
+        for (int t = 0; t < TABLES; t++) {
+            deck.shuffle();
+            SevenPokerGame.State s = game.createState();
+            for (int p = 0; p < players; p++) {
+                String uid = "p" + p;
+                SevenPokerGame.Side side = new SevenPokerGame.Side();
+                for (int c = 0; c < 7; c++) {
+                    side.cards.add(deck.draw());
+                }
+                s.players.put(uid, side);
+                s.order.add(uid);
+            }
+            s.stage = 3;
+            tables.add(s);
+        }
+        aiSeats = new ArrayList<>();
+        for (int p = 0; p < players; p++) {
+            aiSeats.add("AI_" + p);
+        }
+        aiTable = game.createState();
+    }
+
+    private SevenPokerGame.State nextTable() {
+        i = (i + 1) % TABLES;
+        return tables.get(i);
+    }
+
+    @Benchmark
+    public int findLeadIndex() {
+        return game.findLeadIndex(nextTable());
+    }
+
+    @Benchmark
+    public List<String> showdown() {
+        SevenPokerGame.State s = nextTable();
+        s.pot = 100 * players;
+        game.resolveShowdown(s);
+        return s.winners;
+    }
+
+    @Benchmark
+    public SevenPokerGame.State aiHand() {
+        game.start(aiTable, aiSeats, 10);
+        // autoAct stops after 20 steps, so keep nudging the table until the hand is over
+        for (int guard = 0; aiTable.inProgress && guard < 64; guard++) {
+            game.next(aiTable);
+        }
+        return aiTable;
+    }
+}
@@ -1,14 +1,19 @@
 package com.cardgame.cardserver.api;
 import com.cardgame.cardserver.core.*; import com.cardgame.cardserver.util.ApiResponse;
+import com.cardgame.cardserver.util.CardDto;
 import org.springframework.web.bind.annotation.*; import java.util.*;
 @RestController @RequestMapping("/api/baccarat")
 public class BaccaratController {
-    private final Map<String,BaccaratGame> solos = new HashMap<>();
-    private BaccaratGame solo(String u, int decks){ return solos.computeIfAbsent(u, k->new BaccaratGame(decks)); }
+    private final Map<String,BaccaratGame> solos = new java.util.concurrent.ConcurrentHashMap<>();
+    private final IdleReaper.Tracker idle;
+    public BaccaratController(IdleReaper reaper){
+        this.idle = reaper.track("baccarat-solo", java.time.Duration.ofMinutes(30), this::evict);
+    }
+    private BaccaratGame solo(String u, int decks){ idle.touch(u); return solos.computeIfAbsent(u, k->new BaccaratGame(decks)); }
+    private boolean evict(String u){ return solos.computeIfPresent(u, (k,g) -> idle.isIdle(k) ? null : g) == null; }
     private static Map<String,Object> side(String name, java.util.List<Card> cs, int total){
-        return Map.of("name", name, "cards", cs.stream().map(BaccaratController::dto).toList(), "total", total);
+        return Map.of("name", name, "cards", CardDto.list(cs), "total", total);
     }
-    private static Map<String,Object> dto(Card c){ return Map.of("rank", c.rankStr(), "suit", c.suitStr()); }
     @PostMapping("/solo/bet")
     public Object bet(@RequestParam String user, @RequestParam int amount,
                       @RequestParam String main,
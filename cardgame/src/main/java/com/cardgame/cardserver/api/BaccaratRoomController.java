@@ -1,104 +1,209 @@
 package com.cardgame.cardserver.api;
 
 import com.cardgame.cardserver.core.*;
+import com.cardgame.cardserver.core.baccarat.BaccaratOdds;
 import com.cardgame.cardserver.util.ApiResponse;
+import com.cardgame.cardserver.util.CardDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @RestController @RequestMapping("/api/baccarat/room")
 public class BaccaratRoomController {
-    private final Map<String,BaccaratRoom> rooms = new HashMap<>();
-    private BaccaratRoom getOrCreate(String roomId, int decks){ return rooms.computeIfAbsent(roomId, k-> new BaccaratRoom(decks)); }
-    private static Map<String,Object> dto(Card c){ return Map.of("rank", c.rankStr(), "suit", c.suitStr()); }
+    private static final String GAME = "baccarat";
+    private static final Logger LOG = LoggerFactory.getLogger(BaccaratRoomController.class);
+    private final Map<String,BaccaratRoom> rooms = new ConcurrentHashMap<>();
+    private final Map<String,OddsSnapshot> odds = new ConcurrentHashMap<>();
+    private final RoomPushHandler push;
+
+    private record OddsSnapshot(long round, BaccaratOdds.Result result){}
+
+    private final IdleReaper reaper;
+    private final IdleReaper.Tracker idle;
+
+    public BaccaratRoomController(RoomPushHandler push, IdleReaper reaper){
+        this.push = push;
+        this.reaper = reaper;
+        this.idle = reaper.track("baccarat-room", java.time.Duration.ofHours(1), this::evict);
+        push.register(GAME, (roomId, viewer) -> snapshot(roomId));
+    }
+
+    // 유휴 판정을 computeIfPresent 안에서 다시 해서 막 들어온 액션과 겹치지 않게
+    private boolean evict(String roomId){
+        boolean gone = rooms.computeIfPresent(roomId, (k, g) -> idle.isIdle(k) ? null : g) == null;
+        if(gone){ odds.remove(roomId); push.forget(GAME, roomId); RoomExecutor.remove(roomId); }
+        return gone;
+    }
+
+    private BaccaratRoom getOrCreate(String roomId, int decks){
+        return rooms.computeIfAbsent(roomId, k-> { var g = new BaccaratRoom(decks); scheduleOdds(roomId, g); return g; });
+    }
+
+    // 라운드가 끝날 때마다 남은 슈 기준 정확한 확률을 다시 계산.
+    // 방마다 별도 mailbox("odds:"+roomId) 라 게임 액션을 막지 않고, 느린 방이 다른 방의 계산을 늦추지 않는다.
+    // mailbox 안에서 구성을 복사해 넘기므로 계산은 진행 중인 라운드와 겹치지 않는다
+    private void scheduleOdds(String roomId, BaccaratRoom g){
+        int[] composition = g.composition(); long round = g.rounds();
+        RoomExecutor.execute("odds:" + roomId, () -> {
+            try{
+                if(rooms.get(roomId) != g) return;   // 계산 대기 중 정리된 방
+                odds.merge(roomId, new OddsSnapshot(round, BaccaratOdds.compute(composition)),
+                        (old, now) -> now.round() >= old.round() ? now : old);
+                // evict 가 rooms → odds 순으로 지우므로, merge 와 겹쳤으면 여기서 다시 지운다
+                if(rooms.get(roomId) != g) odds.remove(roomId);
+            }catch(RuntimeException e){
+                LOG.warn("baccarat odds failed for room {} round {}", roomId, round, e);
+            }
+        });
+    }
+
+    // runs a state-changing action in the room's mailbox, then pushes the new state to subscribers
+    private CompletableFuture<Object> act(String roomId, Supplier<Object> action){
+        idle.touch(roomId); reaper.touchRoom(roomId);
+        return RoomExecutor.submit(roomId, () -> {
+            Object out = action.get();
+            var g = rooms.get(roomId);
+            if(g!=null) g.r.version++;
+            push.publish(GAME, roomId);
+            return out;
+        });
+    }
 
     @PostMapping("/bet")
-    public Object bet(@RequestParam String roomId, @RequestParam String user,
+    public CompletableFuture<Object> bet(@RequestParam String roomId, @RequestParam String user,
                       @RequestParam String main, @RequestParam int amount,
                       @RequestParam(defaultValue="false") boolean pairP,
                       @RequestParam(defaultValue="false") boolean pairB,
                       @RequestParam(defaultValue="false") boolean super6,
                       @RequestParam(defaultValue="6") int decks){
-        Room r = RoomStore.get(roomId);
-        if(r==null) return ApiResponse.of("ok", false).detail("no room");
-        var g = getOrCreate(roomId, decks);
-        if(!g.r.inProgress){
-            g.resetRound();
-            g.r.inProgress = true;
-        }
-        int stake = amount;
-        if(pairP) stake += amount;
-        if(pairB) stake += amount;
-        if(super6) stake += amount;
-        SessionStore.add(user, -stake);
-        g.place(user, main, amount, pairP, pairB, super6);
-        if(g.ready(r.players)){
-            g.dealAndSettle(true);
-            var round = g.r;
-            Map<String,Integer> balances = new LinkedHashMap<>();
-            if(!round.settlementApplied){
-                for(var entry: round.settle.entrySet()){
-                    balances.put(entry.getKey(), SessionStore.add(entry.getKey(), entry.getValue()));
+        return act(roomId, () -> {
+            Room r = RoomStore.get(roomId);
+            if(r==null) return ApiResponse.of("ok", false).detail("no room");
+            var pick = BaccaratRoom.Bet.main(main);
+            if(pick==null) return ApiResponse.of("ok", false).detail("main must be PLAYER, BANKER or TIE");
+            var g = getOrCreate(roomId, decks);
+            if(!g.r.inProgress){
+                g.resetRound();
+                g.r.inProgress = true;
+            }
+            int stake = amount;
+            if(pairP) stake += amount;
+            if(pairB) stake += amount;
+            if(super6) stake += amount;
+            SessionStore.add(user, -stake);
+            g.place(user, pick, amount, pairP, pairB, super6);
+            if(g.ready(r.players)){
+                g.dealAndSettle(true);
+                scheduleOdds(roomId, g);
+                var round = g.r;
+                Map<String,Integer> balances = new LinkedHashMap<>();
+                if(!round.settlementApplied){
+                    balances = SessionStore.applyAll(round.settle);
+                    round.settlementApplied = true;
                 }
-                round.settlementApplied = true;
+                return ApiResponse.of("ok", true).detail(Map.of(
+                        "inProgress", round.inProgress,
+                        "player", Map.of(
+                                "cards", CardDto.list(round.player.cards),
+                                "total", round.player.total
+                        ),
+                        "banker", Map.of(
+                                "cards", CardDto.list(round.banker.cards),
+                                "total", round.banker.total
+                        ),
+                        "ledger", g.ledgerView(),
+                        "settle", new LinkedHashMap<>(round.settle),
+                        "balances", balances
+                ));
             }
             return ApiResponse.of("ok", true).detail(Map.of(
-                    "inProgress", round.inProgress,
-                    "player", Map.of(
-                            "cards", round.player.cards.stream().map(BaccaratRoomController::dto).toList(),
-                            "total", round.player.total
-                    ),
-                    "banker", Map.of(
-                            "cards", round.banker.cards.stream().map(BaccaratRoomController::dto).toList(),
-                            "total", round.banker.total
-                    ),
-                    "ledger", new LinkedHashMap<>(round.ledger),
-                    "settle", new LinkedHashMap<>(round.settle),
-                    "balances", balances
+                    "ledger", g.ledgerView(),
+                    "inProgress", true,
+                    "balance", SessionStore.get(user)
             ));
-        }
-        return ApiResponse.of("ok", true).detail(Map.of(
-                "ledger", g.r.ledger,
-                "inProgress", true,
-                "balance", SessionStore.get(user)
-        ));
+        });
     }
 
     @PostMapping("/deal")
-    public Object deal(@RequestParam String roomId, @RequestParam(defaultValue="true") boolean commission){
-        var g = rooms.get(roomId);
-        if(g==null) return ApiResponse.of("ok", false).detail("no game");
-        g.dealAndSettle(commission);
-        var r = g.r;
-        Map<String,Integer> balances = new LinkedHashMap<>();
-        if(!r.settlementApplied){
-            for(var entry: r.settle.entrySet()){
-                balances.put(entry.getKey(), SessionStore.add(entry.getKey(), entry.getValue()));
+    public CompletableFuture<Object> deal(@RequestParam String roomId, @RequestParam(defaultValue="true") boolean commission){
+        return act(roomId, () -> {
+            var g = rooms.get(roomId);
+            if(g==null) return ApiResponse.of("ok", false).detail("no game");
+            g.dealAndSettle(commission);
+            scheduleOdds(roomId, g);
+            var r = g.r;
+            Map<String,Integer> balances = new LinkedHashMap<>();
+            if(!r.settlementApplied){
+                balances = SessionStore.applyAll(r.settle);
+                r.settlementApplied = true;
             }
-            r.settlementApplied = true;
-        }
-        return ApiResponse.of("ok", true).detail(Map.of(
-                "inProgress", r.inProgress,
-                "player", Map.of("cards", r.player.cards.stream().map(BaccaratRoomController::dto).toList(), "total", r.player.total),
-                "banker", Map.of("cards", r.banker.cards.stream().map(BaccaratRoomController::dto).toList(), "total", r.banker.total),
-                "ledger", r.ledger,
-                "settle", r.settle,
-                "balances", balances
-        ));
+            return ApiResponse.of("ok", true).detail(Map.of(
+                    "inProgress", r.inProgress,
+                    "player", Map.of("cards", CardDto.list(r.player.cards), "total", r.player.total),
+                    "banker", Map.of("cards", CardDto.list(r.banker.cards), "total", r.banker.total),
+                    "ledger", g.ledgerView(),
+                    "settle", r.settle,
+                    "balances", balances
+            ));
+        });
     }
 
-    @GetMapping("/state")
-    public Object state(@RequestParam String roomId){
+    private ApiResponse snapshot(String roomId){
         var g = rooms.get(roomId);
         if(g==null) return ApiResponse.of("ok", false).detail("no game");
         var r = g.r;
-        return ApiResponse.of("ok", true).detail(Map.of(
-                "inProgress", r.inProgress,
-                "ledger", r.ledger,
-                "player", r.player.cards.isEmpty()? null : Map.of("cards", r.player.cards.stream().map(BaccaratRoomController::dto).toList(), "total", r.player.total),
-                "banker", r.banker.cards.isEmpty()? null : Map.of("cards", r.banker.cards.stream().map(BaccaratRoomController::dto).toList(), "total", r.banker.total),
-                "settle", r.settle,
-                "settled", r.settlementApplied
-        ));
+        Map<String,Object> d = new LinkedHashMap<>();
+        d.put("inProgress", r.inProgress);
+        d.put("ledger", g.ledgerView());
+        d.put("player", r.player.cards.isEmpty()? null : Map.of("cards", CardDto.list(r.player.cards), "total", r.player.total));
+        d.put("banker", r.banker.cards.isEmpty()? null : Map.of("cards", CardDto.list(r.banker.cards), "total", r.banker.total));
+        d.put("settle", r.settle);
+        d.put("settled", r.settlementApplied);
+        return ApiResponse.of("ok", true).detail(d);
+    }
+
+    /** 모니터링: 남은 슈 기준 정확한 승률/페어/슈퍼6 확률과 베팅별 기대 반환율 (마지막 계산 결과) */
+    @GetMapping("/odds")
+    public Object odds(@RequestParam String roomId, @RequestParam(defaultValue="true") boolean commission){
+        var snap = odds.get(roomId);
+        if(snap==null) return ApiResponse.of("ok", false).detail(rooms.containsKey(roomId)? "not computed yet" : "no game");
+        var o = snap.result();
+        Map<String,Object> d = new LinkedHashMap<>();
+        d.put("round", snap.round()); d.put("cardsLeft", o.cards());
+        d.put("player", o.player()); d.put("banker", o.banker()); d.put("tie", o.tie());
+        d.put("playerPair", o.playerPair()); d.put("bankerPair", o.bankerPair()); d.put("super6", o.super6());
+        d.put("return", Map.of("player", o.returnPlayer(), "banker", o.returnBanker(commission), "tie", o.returnTie(),
+                "pair", o.returnPair(), "super6", o.returnSuper6()));
+        d.put("computeMicros", o.nanos()/1000.0);
+        return ApiResponse.of("ok", true).detail(d);
+    }
+
+    /** 출목표. from=<round> 이면 그 라운드 이후 바뀐 부분만 (같은 shoe 일 때) */
+    @GetMapping("/roads")
+    public CompletableFuture<Object> roads(@RequestParam String roomId, @RequestParam(defaultValue="0") long from){
+        return RoomExecutor.submit(roomId, () -> {
+            var g = rooms.get(roomId);
+            if(g==null) return ApiResponse.of("ok", false).detail("no game");
+            return ApiResponse.of("ok", true).detail(g.roads.view(from));
+        });
+    }
+
+    private long version(String roomId){
+        var g = rooms.get(roomId);
+        return g==null? 0 : g.r.version;
+    }
+
+    // ETag/If-None-Match -> 304, since=<version> -> 바뀔 때까지 대기 (ConditionalState)
+    @GetMapping("/state")
+    public CompletableFuture<Object> state(@RequestParam String roomId,
+                                           @RequestParam(required=false) Long since,
+                                           @RequestHeader(value="If-None-Match", required=false) String ifNoneMatch){
+        return ConditionalState.serve(push, GAME, roomId, since, ifNoneMatch,
+                () -> version(roomId), () -> snapshot(roomId));
     }
 }
@@ -13,4 +13,6 @@ public class BalanceController {
         int v=SessionStore.set(user, amount);
         return ApiResponse.of("ok", true).detail(Map.of("balance", v));
     }
+    /** 지갑 WAL 상태: 기록 수, fsync 수, 스냅샷 수, 시작 시 재생한 기록 (로그를 안 쓰면 빈 값) */
+    @GetMapping("/log") public Object log(){ return ApiResponse.of("ok", true).detail(SessionStore.logStats()); }
 }
@@ -1,16 +1,29 @@
 package com.cardgame.cardserver.api;
 import com.cardgame.cardserver.core.*;
+import com.cardgame.cardserver.core.blackjack.BlackjackEv;
 import com.cardgame.cardserver.util.ApiResponse;
+import com.cardgame.cardserver.util.CardDto;
 import org.springframework.web.bind.annotation.*;
 import java.util.*;
 @RestController @RequestMapping("/api/blackjack")
 public class BlackjackController {
-    private final Map<String,BlackjackGame> solos = new HashMap<>();
-    private BlackjackGame solo(String u, int decks){ return solos.computeIfAbsent(u, k->new BlackjackGame(decks)); }
+    private final Map<String,BlackjackGame> solos = new java.util.concurrent.ConcurrentHashMap<>();
+    private final Map<String,BlackjackEv> evs = new java.util.concurrent.ConcurrentHashMap<>();
+    private final IdleReaper.Tracker idle;
+    public BlackjackController(IdleReaper reaper){
+        this.idle = reaper.track("blackjack-solo", java.time.Duration.ofMinutes(30), this::evict);
+    }
+    private BlackjackGame solo(String u, int decks){ idle.touch(u); return solos.computeIfAbsent(u, k->new BlackjackGame(decks)); }
+    private BlackjackGame game(String u){ idle.touch(u); return solos.get(u); }
+    // 유휴 판정을 computeIfPresent 안에서 다시 해서 막 들어온 요청과 겹치지 않게
+    private boolean evict(String u){
+        boolean gone = solos.computeIfPresent(u, (k,g) -> idle.isIdle(k) ? null : g) == null;
+        if(gone) evs.remove(u);
+        return gone;
+    }
     private static Map<String,Object> hand(BlackjackGame.Hand h){
-        return Map.of("cards", h.cards.stream().map(BlackjackController::dto).toList(), "total", h.total, "done", h.done);
+        return Map.of("cards", CardDto.list(h.cards), "total", h.total, "done", h.done);
     }
-    private static Map<String,Object> dto(Card c){ return Map.of("rank", c.rankStr(), "suit", c.suitStr()); }
     private Object wrap(String user, BlackjackGame.State s, int settle){
         int bal = com.cardgame.cardserver.core.SessionStore.add(user, settle);
         Map<String,Object> d = new LinkedHashMap<>();
@@ -19,36 +32,70 @@ public class BlackjackController {
         d.put("activeIndex", s.activeIndex); d.put("dealer", hand(s.dealer));
         return ApiResponse.of("ok", true).detail(d);
     }
+    // 같은 유저의 요청이 겹쳐도 핸드·슈는 한 번에 하나만 건드리도록 모든 solo 엔드포인트가 게임 객체로 잠근다
     @PostMapping("/solo/start") public Object start(@RequestParam String user, @RequestParam int bet, @RequestParam(defaultValue="4") int decks){
         SessionStore.add(user, -bet);
-        var st = solo(user,decks).start(bet); return wrap(user, st, 0);
+        var g=solo(user,decks);
+        synchronized(g){ var st=g.start(bet); return wrap(user, st, 0); }
     }
     @PostMapping("/solo/hit") public Object hit(@RequestParam String user){
-        var g=solos.get(user); var st=g.hit(); return wrap(user, st, st.inProgress?0:st.delta);
+        var g=game(user);
+        synchronized(g){ var st=g.hit(); return wrap(user, st, st.inProgress?0:st.delta); }
     }
     @PostMapping("/solo/stand") public Object stand(@RequestParam String user){
-        var g=solos.get(user); var st=g.stand(); return wrap(user, st, st.inProgress?0:st.delta);
+        var g=game(user);
+        synchronized(g){ var st=g.stand(); return wrap(user, st, st.inProgress?0:st.delta); }
     }
     @PostMapping("/solo/double") public Object dbl(@RequestParam String user){
-        var g=solos.get(user);
-        int stake = g!=null ? g.currentBet() : 0;
-        var st=g.dbl();
-        if(stake>0){
-            SessionStore.add(user, -stake);
+        var g=game(user);
+        synchronized(g){
+            int stake = g.currentBet();
+            var st=g.dbl();
+            if(stake>0){
+                SessionStore.add(user, -stake);
+            }
+            return wrap(user, st, st.inProgress?0:st.delta);
         }
-        return wrap(user, st, st.inProgress?0:st.delta);
     }
     @PostMapping("/solo/surrender") public Object sur(@RequestParam String user){
-        var g=solos.get(user); var st=g.surrender(); return wrap(user, st, st.inProgress?0:st.delta);
+        var g=game(user);
+        synchronized(g){ var st=g.surrender(); return wrap(user, st, st.inProgress?0:st.delta); }
     }
     @PostMapping("/solo/split") public Object split(@RequestParam String user){
-        var g=solos.get(user);
-        int beforeHands = g!=null ? g.handCount() : 0;
-        int stake = g!=null ? g.currentBet() : 0;
-        var st=g.split();
-        if(st.playerHands.size()>beforeHands && stake>0){
-            SessionStore.add(user, -stake);
+        var g=game(user);
+        synchronized(g){
+            int beforeHands = g.handCount();
+            int stake = g.currentBet();
+            var st=g.split();
+            if(st.playerHands.size()>beforeHands && stake>0){
+                SessionStore.add(user, -stake);
+            }
+            return wrap(user, st, 0);
+        }
+    }
+    /** 현재 핸드의 행동별 EV (남은 슈 구성 기준). 딜러 분포 인덱스: 17..21, bust, 17 미만(슈 소진) */
+    @GetMapping("/solo/hint") public Object hint(@RequestParam String user){
+        var g=game(user);
+        if(g==null) return ApiResponse.of("ok", false).detail("no hand in progress");
+        // 계산은 오래 걸리니 핸드와 남은 카드 구성만 잠금 안에서 복사해 두고 잠금 밖에서 돌린다
+        List<Card> cards; Card up; int[] unseen; boolean canSplit;
+        synchronized(g){
+            var st=g.state();
+            if(!st.inProgress) return ApiResponse.of("ok", false).detail("no hand in progress");
+            cards=List.copyOf(st.playerHands.get(st.activeIndex).cards);
+            up=st.dealer.cards.get(0); unseen=g.unseenByRank(); canSplit=g.canSplit();
         }
-        return wrap(user, st, 0);
+        var ev=evs.computeIfAbsent(user, k->new BlackjackEv());
+        BlackjackEv.Result r;
+        try{
+            synchronized(ev){ r=ev.evaluate(cards, up, unseen, canSplit); }
+        }catch(IllegalArgumentException e){
+            return ApiResponse.of("ok", false).detail(e.getMessage());
+        }
+        Map<String,Object> d = new LinkedHashMap<>();
+        d.put("stand", r.stand); d.put("hit", r.hit); d.put("double", r.dbl);
+        if(!Double.isNaN(r.split)) d.put("split", r.split);
+        d.put("surrender", r.surrender); d.put("best", r.best()); d.put("dealer", r.dealer);
+        return ApiResponse.of("ok", true).detail(d);
     }
 }
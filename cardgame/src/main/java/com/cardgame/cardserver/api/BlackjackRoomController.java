@@ -2,15 +2,53 @@ package com.cardgame.cardserver.api;
 
 import com.cardgame.cardserver.core.*;
 import com.cardgame.cardserver.util.ApiResponse;
+import com.cardgame.cardserver.util.CardDto;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @RestController @RequestMapping("/api/blackjack/room")
 public class BlackjackRoomController {
+    private static final String GAME = "blackjack";
 
     // roomId -> BlackjackRoom
-    private final Map<String,BlackjackRoom> rooms = new HashMap<>();
+    private final Map<String,BlackjackRoom> rooms = new ConcurrentHashMap<>();
+    private final RoomPushHandler push;
+    // roomId -> viewer -> 가려진 hands (version 단위)
+    private final ViewCache<List<Map<String,Object>>> handViews = new ViewCache<>();
+
+    private final IdleReaper reaper;
+    private final IdleReaper.Tracker idle;
+
+    public BlackjackRoomController(RoomPushHandler push, IdleReaper reaper){
+        this.push = push;
+        this.reaper = reaper;
+        this.idle = reaper.track("blackjack-room", java.time.Duration.ofHours(1), this::evict);
+        push.register(GAME, this::snapshot);
+    }
+
+    // 유휴 판정을 computeIfPresent 안에서 다시 해서 막 들어온 액션과 겹치지 않게
+    private boolean evict(String roomId){
+        boolean gone = rooms.computeIfPresent(roomId, (k, g) -> idle.isIdle(k) ? null : g) == null;
+        if(gone){ handViews.invalidate(roomId); push.forget(GAME, roomId); RoomExecutor.remove(roomId); }
+        return gone;
+    }
+
+    // runs a state-changing action in the room's mailbox, then pushes the new state to subscribers
+    private CompletableFuture<Object> act(String roomId, Supplier<Object> action){
+        idle.touch(roomId); reaper.touchRoom(roomId);
+        return RoomExecutor.submit(roomId, () -> {
+            Object out = action.get();
+            var g = rooms.get(roomId);
+            if(g!=null) g.s.version++;
+            handViews.invalidate(roomId);
+            push.publish(GAME, roomId);
+            return out;
+        });
+    }
 
     private BlackjackRoom getOrCreate(String roomId, int decks){
         return rooms.computeIfAbsent(roomId, k -> new BlackjackRoom(decks));
@@ -21,16 +59,11 @@ public class BlackjackRoomController {
         if(st.settlementApplied){
             return Collections.emptyMap();
         }
-        Map<String,Integer> balances = new LinkedHashMap<>();
-        for(var entry: st.settle.entrySet()){
-            balances.put(entry.getKey(), SessionStore.add(entry.getKey(), entry.getValue()));
-        }
+        Map<String,Integer> balances = SessionStore.applyAll(st.settle);
         st.settlementApplied = true;
         return balances;
     }
 
-    private static Map<String,Object> dto(Card c){ return Map.of("rank", c.rankStr(), "suit", c.suitStr()); }
-
     private static List<Map<String,Object>> maskHands(String me, Map<String, BlackjackRoom.Hand> all, boolean inProgress){
         List<Map<String,Object>> out = new ArrayList<>();
         for(var e: all.entrySet()){
@@ -39,89 +72,116 @@ public class BlackjackRoomController {
             List<Map<String,Object>> cards = new ArrayList<>();
             for(int i=0; i<h.cards.size(); i++){
                 if(inProgress && !uid.equals(me) && i>=1){
-                    cards.add(Map.of("rank","BACK","suit",""));
+                    cards.add(CardDto.BACK);
                 }else{
-                    cards.add(dto(h.cards.get(i)));
+                    cards.add(CardDto.of(h.cards.get(i)));
                 }
             }
-            out.add(Map.of("user", uid, "total", uid.equals(me)||!inProgress? h.total : null, "cards", cards));
+            Map<String,Object> row = new LinkedHashMap<>();
+            row.put("user", uid);
+            row.put("total", uid.equals(me)||!inProgress? h.total : null);
+            row.put("cards", cards);
+            out.add(row);
         }
         return out;
     }
 
     @PostMapping("/start")
-    public Object start(@RequestParam String roomId, @RequestParam String host, @RequestParam int bet, @RequestParam(defaultValue="4") int decks){
-        Room r = RoomStore.get(roomId);
-        if(r==null) return ApiResponse.of("ok", false).detail("no room");
-        var game = getOrCreate(roomId, decks);
-        var users = new ArrayList<>(r.players);
-        var st = game.start(users, bet);
-        Map<String,Integer> balances = new LinkedHashMap<>();
-        for(String uid: users){
-            balances.put(uid, SessionStore.add(uid, -bet));
-        }
-        return ApiResponse.of("ok", true).detail(Map.of(
-                "inProgress", st.inProgress,
-                "bet", st.bet,
-                "dealer", Map.of(
-                        "cards", List.of(dto(st.dealer.cards.get(0)), Map.of("rank","BACK","suit","")),
-                        "total", null
-                ),
-                "hands", maskHands(host, st.hands, true),
-                "balances", balances
-        ));
+    public CompletableFuture<Object> start(@RequestParam String roomId, @RequestParam String host, @RequestParam int bet, @RequestParam(defaultValue="4") int decks){
+        return act(roomId, () -> {
+            Room r = RoomStore.get(roomId);
+            if(r==null) return ApiResponse.of("ok", false).detail("no room");
+            var game = getOrCreate(roomId, decks);
+            var users = new ArrayList<>(r.players);
+            var st = game.start(users, bet);
+            Map<String,Integer> balances = new LinkedHashMap<>();
+            for(String uid: users){
+                balances.put(uid, SessionStore.add(uid, -bet));
+            }
+            Map<String,Object> dealer = new LinkedHashMap<>();
+            dealer.put("cards", List.of(CardDto.of(st.dealer.cards.get(0)), CardDto.BACK));
+            dealer.put("total", null);
+            return ApiResponse.of("ok", true).detail(Map.of(
+                    "inProgress", st.inProgress,
+                    "bet", st.bet,
+                    "dealer", dealer,
+                    "hands", maskHands(host, st.hands, true),
+                    "balances", balances
+            ));
+        });
     }
 
-    @GetMapping("/state")
-    public Object state(@RequestParam String roomId, @RequestParam String viewer){
+    private ApiResponse snapshot(String roomId, String viewer){
         var g = rooms.get(roomId);
         if(g==null) return ApiResponse.of("ok", false).detail("no game");
         var st = g.s;
         var dealerCards = new ArrayList<Map<String,Object>>();
         if(st.inProgress){
-            dealerCards.add(dto(st.dealer.cards.get(0)));
-            dealerCards.add(Map.of("rank","BACK","suit",""));
+            dealerCards.add(CardDto.of(st.dealer.cards.get(0)));
+            dealerCards.add(CardDto.BACK);
         }else{
-            for(Card c: st.dealer.cards) dealerCards.add(dto(c));
+            for(Card c: st.dealer.cards) dealerCards.add(CardDto.of(c));
         }
+        Map<String,Object> dealer = new LinkedHashMap<>();
+        dealer.put("cards", dealerCards);
+        dealer.put("total", st.inProgress?null:st.dealer.total);
         return ApiResponse.of("ok", true).detail(Map.of(
                 "inProgress", st.inProgress,
                 "bet", st.bet,
-                "dealer", Map.of("cards", dealerCards, "total", st.inProgress?null:st.dealer.total),
-                "hands", maskHands(viewer, st.hands, st.inProgress),
+                "dealer", dealer,
+                "hands", handViews.get(roomId, st.version, st.hands.containsKey(viewer)? viewer : ViewCache.SPECTATOR,
+                        v -> maskHands(v, st.hands, st.inProgress)),
                 "deltaTotal", st.deltaTotal,
                 "settle", new LinkedHashMap<>(st.settle),
                 "settled", st.settlementApplied
         ));
     }
 
-    @PostMapping("/hit")
-    public Object hit(@RequestParam String roomId, @RequestParam String user){
+    private long version(String roomId){
         var g = rooms.get(roomId);
-        if(g==null) return ApiResponse.of("ok", false).detail("no game");
-        var st = g.hit(user);
-        Map<String,Object> detail = new LinkedHashMap<>();
-        detail.put("inProgress", st.inProgress);
-        if(!st.inProgress){
-            detail.put("settle", new LinkedHashMap<>(st.settle));
-            Map<String,Integer> balances = applySettlement(g);
-            if(!balances.isEmpty()) detail.put("balances", balances);
-        }
-        return ApiResponse.of("ok", true).detail(detail);
+        return g==null? 0 : g.s.version;
+    }
+
+    // ETag/If-None-Match -> 304, since=<version> -> 바뀔 때까지 대기 (ConditionalState)
+    @GetMapping("/state")
+    public CompletableFuture<Object> state(@RequestParam String roomId, @RequestParam String viewer,
+                                           @RequestParam(required=false) Long since,
+                                           @RequestHeader(value="If-None-Match", required=false) String ifNoneMatch){
+        return ConditionalState.serve(push, GAME, roomId, since, ifNoneMatch,
+                () -> version(roomId), () -> snapshot(roomId, viewer));
+    }
+
+    @PostMapping("/hit")
+    public CompletableFuture<Object> hit(@RequestParam String roomId, @RequestParam String user){
+        return act(roomId, () -> {
+            var g = rooms.get(roomId);
+            if(g==null) return ApiResponse.of("ok", false).detail("no game");
+            var st = g.hit(user);
+            Map<String,Object> detail = new LinkedHashMap<>();
+            detail.put("inProgress", st.inProgress);
+            if(!st.inProgress){
+                detail.put("settle", new LinkedHashMap<>(st.settle));
+                Map<String,Integer> balances = applySettlement(g);
+                if(!balances.isEmpty()) detail.put("balances", balances);
+            }
+            return ApiResponse.of("ok", true).detail(detail);
+        });
     }
 
     @PostMapping("/stand")
-    public Object stand(@RequestParam String roomId, @RequestParam String user){
-        var g = rooms.get(roomId);
-        if(g==null) return ApiResponse.of("ok", false).detail("no game");
-        var st = g.stand(user);
-        Map<String,Object> detail = new LinkedHashMap<>();
-        detail.put("inProgress", st.inProgress);
-        if(!st.inProgress){
-            detail.put("settle", new LinkedHashMap<>(st.settle));
-            Map<String,Integer> balances = applySettlement(g);
-            if(!balances.isEmpty()) detail.put("balances", balances);
-        }
-        return ApiResponse.of("ok", true).detail(detail);
+    public CompletableFuture<Object> stand(@RequestParam String roomId, @RequestParam String user){
+        return act(roomId, () -> {
+            var g = rooms.get(roomId);
+            if(g==null) return ApiResponse.of("ok", false).detail("no game");
+            var st = g.stand(user);
+            Map<String,Object> detail = new LinkedHashMap<>();
+            detail.put("inProgress", st.inProgress);
+            if(!st.inProgress){
+                detail.put("settle", new LinkedHashMap<>(st.settle));
+                Map<String,Integer> balances = applySettlement(g);
+                if(!balances.isEmpty()) detail.put("balances", balances);
+            }
+            return ApiResponse.of("ok", true).detail(detail);
+        });
     }
 }
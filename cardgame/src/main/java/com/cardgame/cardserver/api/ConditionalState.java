@@ -0,0 +1,58 @@
+package com.cardgame.cardserver.api;
+
+import com.cardgame.cardserver.core.RoomExecutor;
+import com.cardgame.cardserver.util.ApiResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Conditional /state responses keyed by the room's version: the ETag is the version, a matching
+ * If-None-Match gets 304 without rendering anything, and since=&lt;version&gt; holds the request until
+ * the room changes (or {@link #HOLD_MS} passes, which answers 304). A view that also shows something
+ * the room version doesn't cover (the viewer's wallet balance) folds it into the tag as a stamp.
+ */
+final class ConditionalState {
+
+    static final long HOLD_MS = 25_000;
+
+    private ConditionalState() {
+    }
+
+    /** {@code version} and {@code render} run inside the room's mailbox. */
+    static CompletableFuture<Object> serve(RoomPushHandler push, String game, String roomId, Long since,
+                                           String ifNoneMatch, LongSupplier version, Supplier<ApiResponse> render) {
+        return serve(push, game, roomId, since, ifNoneMatch, version, null, render);
+    }
+
+    /** As above, with {@code stamp} (may be null) added to the ETag next to the version. */
+    static CompletableFuture<Object> serve(RoomPushHandler push, String game, String roomId, Long since,
+                                           String ifNoneMatch, LongSupplier version, LongSupplier stamp,
+                                           Supplier<ApiResponse> render) {
+        if (since == null) {
+            return RoomExecutor.submit(roomId,
+                    () -> respond(version.getAsLong(), stamp, ifNoneMatch, null, render));
+        }
+        return RoomExecutor.submit(roomId, () -> since == version.getAsLong()
+                        ? push.nextChange(game, roomId)
+                        : CompletableFuture.<Void>completedFuture(null))
+                .thenCompose(change -> change.completeOnTimeout(null, HOLD_MS, TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> RoomExecutor.submit(roomId,
+                        () -> respond(version.getAsLong(), stamp, ifNoneMatch, since, render)));
+    }
+
+    private static Object respond(long version, LongSupplier stamp, String ifNoneMatch, Long since,
+                                  Supplier<ApiResponse> render) {
+        String tag = "\"" + version + (stamp == null ? "" : "-" + stamp.getAsLong()) + "\"";
+        boolean unchanged = (since != null && since == version)
+                || (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(tag)));
+        if (unchanged) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tag).build();
+        }
+        return ResponseEntity.ok().eTag(tag).body(render.get().putKV("version", version));
+    }
+}
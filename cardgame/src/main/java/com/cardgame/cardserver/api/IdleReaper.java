@@ -0,0 +1,176 @@
+package com.cardgame.cardserver.api;
+
+import com.cardgame.cardserver.core.RoomStore;
+import com.cardgame.cardserver.util.HashedWheelTimer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Expires idle solo games and rooms. Each owner registers a {@link Tracker} per map with an evictor and
+ * calls {@link Tracker#touch} on activity, which only writes a timestamp. One timeout per live key sits
+ * on a {@link HashedWheelTimer}; when it fires, a key that was active meanwhile is re-armed for the rest
+ * of its TTL, otherwise the evictor is asked to drop it. Evictors re-check {@link Tracker#isIdle} under
+ * their own atomicity (e.g. inside {@code computeIfPresent}), so a touch racing the expiry wins.
+ *
+ * <p>TTLs come from {@code cardgame.idle.ttl.<kind>} (e.g. {@code 30m}), the tick from
+ * {@code cardgame.idle.tick}. The lobby's {@link RoomStore} rooms are tracked here as kind {@link #ROOM}.
+ */
+@Component
+public class IdleReaper {
+
+    public static final String ROOM = "room";
+
+    private static final int WHEEL_SIZE = 512;
+    // last-active value of a cell whose eviction is in progress
+    private static final long EVICTING = Long.MIN_VALUE;
+
+    private final Environment env;
+    private final HashedWheelTimer timer;
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+    private final Tracker rooms;
+
+    public IdleReaper(Environment env) {
+        this.env = env;
+        Duration tick = env.getProperty("cardgame.idle.tick", Duration.class, Duration.ofSeconds(1));
+        this.timer = new HashedWheelTimer("idle-reaper", Math.max(1, tick.toMillis()), WHEEL_SIZE);
+        this.rooms = track(ROOM, Duration.ofHours(2), id -> RoomStore.removeIf(id, k -> trackers.get(ROOM).isIdle(k)));
+    }
+
+    public final class Tracker {
+        private final String kind;
+        private final long ttlMillis;
+        private final Predicate<String> evictor;
+        private final Map<String, AtomicLong> lastActive = new ConcurrentHashMap<>();
+        private final AtomicLong evictions = new AtomicLong();
+
+        private Tracker(String kind, long ttlMillis, Predicate<String> evictor) {
+            this.kind = kind;
+            this.ttlMillis = ttlMillis;
+            this.evictor = evictor;
+        }
+
+        public void touch(String key) {
+            if (key == null) {
+                return;
+            }
+            long now = now();
+            while (true) {
+                AtomicLong last = lastActive.get(key);
+                if (last == null) {
+                    AtomicLong fresh = new AtomicLong(now);
+                    if (lastActive.putIfAbsent(key, fresh) == null) {
+                        timer.schedule(() -> expire(key, fresh), ttlMillis);
+                        return;
+                    }
+                    continue;
+                }
+                long seen = last.get();
+                if (seen == EVICTING) {
+                    // the old cell is being evicted: track the key with a new one
+                    AtomicLong fresh = new AtomicLong(now);
+                    if (lastActive.replace(key, last, fresh)) {
+                        timer.schedule(() -> expire(key, fresh), ttlMillis);
+                        return;
+                    }
+                    continue;
+                }
+                if (seen >= now || last.compareAndSet(seen, now)) {
+                    return;
+                }
+            }
+        }
+
+        public boolean isIdle(String key) {
+            AtomicLong last = lastActive.get(key);
+            if (last == null) {
+                return true;
+            }
+            long seen = last.get();
+            return seen == EVICTING || now() - seen >= ttlMillis;
+        }
+
+        /** Stops tracking without counting an eviction (the owner dropped the entry itself). */
+        public void forget(String key) {
+            lastActive.remove(key);
+        }
+
+        public int live() {
+            return lastActive.size();
+        }
+
+        public long evictions() {
+            return evictions.get();
+        }
+
+        public long ttlMillis() {
+            return ttlMillis;
+        }
+
+        private void expire(String key, AtomicLong last) {
+            if (lastActive.get(key) != last) {
+                return;   // forgotten, or replaced by a newer entry with its own timeout
+            }
+            long seen = last.get();
+            long idle = now() - seen;
+            if (idle < ttlMillis) {
+                timer.schedule(() -> expire(key, last), ttlMillis - idle);
+                return;
+            }
+            // claim the cell first: a touch from here on tracks the key in a new cell, so neither the
+            // evictor's idle check nor the removal below can lose it
+            if (!last.compareAndSet(seen, EVICTING)) {
+                timer.schedule(() -> expire(key, last), ttlMillis);
+                return;
+            }
+            if (evictor.test(key)) {
+                lastActive.remove(key, last);
+                evictions.incrementAndGet();
+            } else if (last.compareAndSet(EVICTING, now()) && lastActive.get(key) == last) {
+                timer.schedule(() -> expire(key, last), ttlMillis);
+            }
+        }
+    }
+
+    /** One tracker per kind; a second call for the same kind returns the first. */
+    public Tracker track(String kind, Duration defaultTtl, Predicate<String> evictor) {
+        return trackers.computeIfAbsent(kind, k -> {
+            Duration ttl = env.getProperty("cardgame.idle.ttl." + k, Duration.class, defaultTtl);
+            return new Tracker(k, Math.max(1, ttl.toMillis()), evictor);
+        });
+    }
+
+    /** Lobby room activity (create/join/leave and every game action in it). */
+    public void touchRoom(String roomId) {
+        rooms.touch(roomId);
+    }
+
+    /** kind -> {ttlSeconds, live, evicted} */
+    public Map<String, Object> metrics() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        trackers.values().stream().sorted((a, b) -> a.kind.compareTo(b.kind)).forEach(t -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("ttlSeconds", t.ttlMillis / 1000);
+            m.put("live", t.live());
+            m.put("evicted", t.evictions());
+            out.put(t.kind, m);
+        });
+        return out;
+    }
+
+    @PreDestroy
+    public void close() {
+        timer.close();
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000L;
+    }
+}
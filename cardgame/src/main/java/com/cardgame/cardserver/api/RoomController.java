@@ -5,16 +5,43 @@ import org.springframework.web.bind.annotation.*;
 import java.util.*;
 @RestController @RequestMapping("/api/rooms")
 public class RoomController {
-    @GetMapping public Object list(){ return ApiResponse.of("ok", true).detail(RoomStore.list()); }
+    private final IdleReaper reaper;
+    public RoomController(IdleReaper reaper){ this.reaper = reaper; }
+    private static final int MAX_PAGE = 200;
+    /** 로비: game / open(빈 자리) 필터, after 커서 + size 페이지. state 맵 없이 요약만 내려준다 */
+    @GetMapping public Object list(@RequestParam(required=false) String game,
+                                   @RequestParam(defaultValue="false") boolean open,
+                                   @RequestParam(required=false) String after,
+                                   @RequestParam(defaultValue="50") int size){
+        Room.Game g = game==null || game.isBlank() ? null : Room.Game.valueOf(game.toUpperCase());
+        var page = RoomStore.page(g, open, after, Math.max(1, Math.min(MAX_PAGE, size)));
+        if(page==null) return ApiResponse.of("ok", false).detail("bad cursor");
+        List<Map<String,Object>> rooms = new ArrayList<>(page.rooms().size());
+        for(Room r: page.rooms()) rooms.add(summary(r));
+        return ApiResponse.of("ok", true).detail(rooms).putKV("next", page.next()).putKV("total", page.total());
+    }
+    /** 유휴 정리 현황: 종류별 TTL, 살아있는 수, 누적 정리 수 */
+    @GetMapping("/idle") public Object idle(){ return ApiResponse.of("ok", true).detail(reaper.metrics()); }
+    private static Map<String,Object> summary(Room r){
+        Map<String,Object> m = new LinkedHashMap<>();
+        synchronized(r){
+            m.put("id", r.id); m.put("game", r.game); m.put("decks", r.decks); m.put("host", r.host);
+            m.put("players", new ArrayList<>(r.players)); m.put("seats", r.game.seats);
+        }
+        return m;
+    }
     @PostMapping("/create")
     public Object create(@RequestParam String user, @RequestParam String game, @RequestParam int decks){
         Room.Game g = Room.Game.valueOf(game.toUpperCase());
         Room r = RoomStore.create(g, decks, user);
-        return ApiResponse.of("ok", true).detail(r);
+        reaper.touchRoom(r.id);
+        return ApiResponse.of("ok", true).detail(summary(r));
     }
     @PostMapping("/join")
     public Object join(@RequestParam String user, @RequestParam String roomId){
         boolean ok = RoomStore.join(roomId, user);
-        return ApiResponse.of("ok", ok).detail(RoomStore.get(roomId));
+        if(ok) reaper.touchRoom(roomId);
+        Room r = RoomStore.get(roomId);
+        return ApiResponse.of("ok", ok).detail(r==null? null : summary(r));
     }
 }
@@ -0,0 +1,167 @@
+package com.cardgame.cardserver.api;
+
+import com.cardgame.cardserver.core.RoomExecutor;
+import com.cardgame.cardserver.util.ApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket channel per room: /api/ws/rooms?game=blackjack|baccarat|seven&roomId=..&viewer=..
+ * Each room controller registers how to render its /state response; after every room action the
+ * controller calls {@link #publish} and each subscriber gets that response as a frame, rendered once
+ * per distinct viewer and only sent when it differs from the last frame that session received.
+ * The same publish also wakes /state long-polls waiting on {@link #nextChange}. When a room is
+ * evicted its controller calls {@link #forget} so neither outlives it.
+ */
+@Component
+public class RoomPushHandler extends TextWebSocketHandler {
+
+    public interface Snapshot {
+        ApiResponse render(String roomId, String viewer);
+    }
+
+    private static final int SEND_TIME_LIMIT_MS = 5_000;
+    private static final int BUFFER_LIMIT_BYTES = 512 * 1024;
+    private static final String GAME = "game";
+    private static final String ROOM = "roomId";
+    private static final String VIEWER = "viewer";
+    private static final String LAST_FRAME = "lastFrame";
+
+    private final ObjectMapper mapper;
+    private final Map<String, Snapshot> sources = new ConcurrentHashMap<>();
+    private final Map<String, Set<WebSocketSession>> topics = new ConcurrentHashMap<>();
+    // only touched from the room's mailbox, so the lists need no locking
+    private final Map<String, List<CompletableFuture<Void>>> waiters = new ConcurrentHashMap<>();
+
+    public RoomPushHandler(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public void register(String game, Snapshot snapshot) {
+        sources.put(game, snapshot);
+    }
+
+    /** Must run inside the room's RoomExecutor mailbox, right after the action that changed it. */
+    public void publish(String game, String roomId) {
+        List<CompletableFuture<Void>> waiting = waiters.remove(topic(game, roomId));
+        if (waiting != null) {
+            waiting.forEach(w -> w.complete(null));
+        }
+        Set<WebSocketSession> sessions = topics.get(topic(game, roomId));
+        Snapshot source = sources.get(game);
+        if (sessions == null || sessions.isEmpty() || source == null) {
+            return;
+        }
+        Map<String, String> frames = new HashMap<>();
+        for (WebSocketSession session : sessions) {
+            String viewer = (String) session.getAttributes().get(VIEWER);
+            String frame = frames.computeIfAbsent(viewer, v -> render(source, game, roomId, v));
+            send(session, frame);
+        }
+    }
+
+    /** Completes on the room's next {@link #publish}. Must run inside the room's mailbox. */
+    public CompletableFuture<Void> nextChange(String game, String roomId) {
+        String key = topic(game, roomId);
+        CompletableFuture<Void> change = new CompletableFuture<>();
+        waiters.computeIfAbsent(key, k -> new ArrayList<>()).add(change);
+        // a long-poll that timed out leaves its list, so rooms that never change don't keep an entry
+        change.whenComplete((ignored, e) -> RoomExecutor.execute(roomId, () ->
+                waiters.computeIfPresent(key, (k, list) -> {
+                    list.remove(change);
+                    return list.isEmpty() ? null : list;
+                })));
+        return change;
+    }
+
+    /**
+     * For a room its controller just removed: long-polls and subscribers get one last frame (the
+     * controller's "no game" answer), then the sockets are closed and the topic forgotten.
+     */
+    public void forget(String game, String roomId) {
+        RoomExecutor.execute(roomId, () -> {
+            publish(game, roomId);
+            Set<WebSocketSession> sessions = topics.remove(topic(game, roomId));
+            if (sessions == null) {
+                return;
+            }
+            for (WebSocketSession session : sessions) {
+                try {
+                    session.close(CloseStatus.GOING_AWAY.withReason("room closed"));
+                } catch (IOException ignored) {
+                    // already gone
+                }
+            }
+        });
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession raw) throws Exception {
+        var params = UriComponentsBuilder.fromUri(Objects.requireNonNull(raw.getUri())).build().getQueryParams();
+        String game = params.getFirst(GAME);
+        String roomId = params.getFirst(ROOM);
+        String viewer = params.getFirst(VIEWER);
+        Snapshot source = game == null ? null : sources.get(game);
+        if (source == null || roomId == null || roomId.isEmpty()) {
+            raw.close(CloseStatus.BAD_DATA.withReason("game and roomId required"));
+            return;
+        }
+        WebSocketSession session = new ConcurrentWebSocketSessionDecorator(raw, SEND_TIME_LIMIT_MS, BUFFER_LIMIT_BYTES);
+        raw.getAttributes().put(GAME, game);
+        raw.getAttributes().put(ROOM, roomId);
+        raw.getAttributes().put(VIEWER, viewer == null ? "" : viewer);
+        raw.getAttributes().put(ConcurrentWebSocketSessionDecorator.class.getName(), session);
+        topics.computeIfAbsent(topic(game, roomId), k -> ConcurrentHashMap.newKeySet()).add(session);
+        RoomExecutor.execute(roomId, () -> send(session, render(source, game, roomId, viewer == null ? "" : viewer)));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession raw, CloseStatus status) {
+        Object session = raw.getAttributes().get(ConcurrentWebSocketSessionDecorator.class.getName());
+        String key = topic((String) raw.getAttributes().get(GAME), (String) raw.getAttributes().get(ROOM));
+        topics.computeIfPresent(key, (k, set) -> {
+            set.remove(session);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private String render(Snapshot source, String game, String roomId, String viewer) {
+        try {
+            ApiResponse frame = source.render(roomId, viewer).putKV(GAME, game).putKV(ROOM, roomId);
+            return mapper.writeValueAsString(frame);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot serialize room state", e);
+        }
+    }
+
+    private void send(WebSocketSession session, String frame) {
+        if (!session.isOpen() || frame.equals(session.getAttributes().get(LAST_FRAME))) {
+            return;
+        }
+        try {
+            session.sendMessage(new TextMessage(frame));
+            session.getAttributes().put(LAST_FRAME, frame);
+        } catch (IOException | IllegalStateException e) {
+            try {
+                session.close(CloseStatus.SERVER_ERROR);
+            } catch (IOException ignored) {
+                // already gone
+            }
+        }
+    }
+
+    private static String topic(String game, String roomId) {
+        return game + ":" + roomId;
+    }
+}
@@ -1,22 +1,99 @@
 package com.cardgame.cardserver.api;
 
-import com.cardgame.cardserver.core.Card;
+import com.cardgame.cardserver.core.RoomExecutor;
 import com.cardgame.cardserver.core.SevenPokerGame;
 import com.cardgame.cardserver.core.SessionStore;
+import com.cardgame.cardserver.core.poker.StudEquity;
+import com.cardgame.cardserver.core.poker.StudExact;
 import com.cardgame.cardserver.util.ApiResponse;
+import com.cardgame.cardserver.util.CardDto;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/seven")
 public class SevenPokerController {
 
+    private static final String GAME = "seven";
+    // safety cap on one chain of scheduled AI decisions
+    private static final int AI_STEP_BUDGET = 200;
+
     private final Map<String, SevenPokerGame.State> rooms = new ConcurrentHashMap<>();
-    private final SevenPokerGame game = new SevenPokerGame();
+    private final SevenPokerGame game;
+    private final boolean asyncAi;
+    private final RoomPushHandler push;
+    private final ViewCache<List<Map<String, Object>>> playerViews = new ViewCache<>();
+
+    private final IdleReaper reaper;
+    private final IdleReaper.Tracker idle;
+
+    public SevenPokerController(RoomPushHandler push, IdleReaper reaper,
+                                @Value("${cardgame.seven.async-ai:false}") boolean asyncAi) {
+        this.push = push;
+        this.reaper = reaper;
+        this.asyncAi = asyncAi;
+        this.game = new SevenPokerGame(!asyncAi);
+        this.idle = reaper.track("seven-room", Duration.ofHours(1), this::evict);
+        push.register(GAME, this::snapshot);
+    }
+
+    // re-checks idleness inside computeIfPresent so an action that just arrived keeps the room
+    private boolean evict(String roomId) {
+        boolean gone = rooms.computeIfPresent(roomId, (k, state) -> idle.isIdle(k) ? null : state) == null;
+        if (gone) {
+            playerViews.invalidate(roomId);
+            push.forget(GAME, roomId);
+            RoomExecutor.remove(roomId);
+        }
+        return gone;
+    }
+
+    // runs a state-changing action in the room's mailbox, then pushes the new state to subscribers
+    private CompletableFuture<Object> act(String roomId, Supplier<Object> action) {
+        idle.touch(roomId);
+        reaper.touchRoom(roomId);
+        return RoomExecutor.submit(roomId, () -> {
+            Object out = action.get();
+            changed(roomId);
+            if (asyncAi) {
+                scheduleAi(roomId, AI_STEP_BUDGET);
+            }
+            return out;
+        });
+    }
 
+    private void changed(String roomId) {
+        SevenPokerGame.State state = rooms.get(roomId);
+        if (state != null) {
+            state.version++;
+        }
+        playerViews.invalidate(roomId);
+        push.publish(GAME, roomId);
+    }
+
+    // async-ai: one AI decision per mailbox task, published like any other action, until a human is to act
+    private void scheduleAi(String roomId, int budget) {
+        RoomExecutor.execute(roomId, () -> {
+            SevenPokerGame.State state = rooms.get(roomId);
+            if (state == null || !game.aiStep(state)) {
+                return;
+            }
+            applyPayouts(state);
+            changed(roomId);
+            if (budget > 1) {
+                scheduleAi(roomId, budget - 1);
+            }
+        });
+    }
+
+    // only from inside act(...), after the idle touch; reads must not bring an evicted room back
     private SevenPokerGame.State ensureState(String roomId) {
         return rooms.computeIfAbsent(roomId, key -> new SevenPokerGame.State());
     }
@@ -104,13 +181,6 @@ public class SevenPokerController {
         }
     }
 
-    private static Map<String, Object> dto(Card card) {
-        return Map.of(
-                "rank", card.rankStr(),
-                "suit", card.suitStr()
-        );
-    }
-
     private List<Map<String, Object>> maskFor(String viewer, SevenPokerGame.State state) {
         List<Map<String, Object>> out = new ArrayList<>();
         Set<String> handled = new HashSet<>();
@@ -141,7 +211,7 @@ public class SevenPokerController {
         List<Map<String, Object>> visible = new ArrayList<>();
         for (int i = 0; i < side.cards.size(); i++) {
             boolean hide = !Objects.equals(viewer, uid) && (i < 2 || i == 6);
-            visible.add(hide ? Map.of("rank", "BACK", "suit", "") : dto(side.cards.get(i)));
+            visible.add(hide ? CardDto.BACK : CardDto.of(side.cards.get(i)));
         }
         Map<String, Object> row = new LinkedHashMap<>();
         row.put("user", uid);
@@ -171,29 +241,33 @@ public class SevenPokerController {
     }
 
     @PostMapping("/start")
-    public Object start(@RequestParam String roomId,
+    public CompletableFuture<Object> start(@RequestParam String roomId,
                         @RequestParam String users,
                         @RequestParam int ante) {
-        List<String> list = Arrays.stream(users.split(","))
-                .map(String::trim)
-                .filter(u -> !u.isEmpty())
-                .collect(Collectors.toList());
-        SevenPokerGame.State state = ensureState(roomId);
-        game.start(state, list, ante);
-        applyAntes(state);
-        Map<String, Object> payload = new LinkedHashMap<>();
-        payload.put("inProgress", state.inProgress);
-        payload.put("stage", state.stageName);
-        payload.put("round", state.stage);
-        if (state.turn != null) {
-            payload.put("turn", state.turn);
-        }
-        return ApiResponse.of("ok", true).detail(payload);
+        return act(roomId, () -> {
+            List<String> list = Arrays.stream(users.split(","))
+                    .map(String::trim)
+                    .filter(u -> !u.isEmpty())
+                    .collect(Collectors.toList());
+            SevenPokerGame.State state = ensureState(roomId);
+            game.start(state, list, ante);
+            applyAntes(state);
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("inProgress", state.inProgress);
+            payload.put("stage", state.stageName);
+            payload.put("round", state.stage);
+            if (state.turn != null) {
+                payload.put("turn", state.turn);
+            }
+            return ApiResponse.of("ok", true).detail(payload);
+        });
     }
 
-    @GetMapping("/state")
-    public Object state(@RequestParam String roomId, @RequestParam String viewer) {
-        SevenPokerGame.State state = ensureState(roomId);
+    private ApiResponse snapshot(String roomId, String viewer) {
+        SevenPokerGame.State state = rooms.get(roomId);
+        if (state == null) {
+            return ApiResponse.of("ok", false).detail("no game");
+        }
         applyPayouts(state);
         Map<String, Object> detail = new LinkedHashMap<>();
         detail.put("inProgress", state.inProgress);
@@ -208,116 +282,168 @@ public class SevenPokerController {
         detail.put("winners", new ArrayList<>(state.winners));
         detail.put("payouts", new LinkedHashMap<>(state.payouts));
         detail.put("settledPot", state.settledPot);
-        detail.put("players", maskFor(viewer, state));
+        String viewKey = state.players.containsKey(viewer) ? viewer : ViewCache.SPECTATOR;
+        detail.put("players", playerViews.get(roomId, state.version, viewKey, v -> maskFor(v, state)));
         detail.put("balance", SessionStore.get(viewer));
         detail.put("balanceDelta", state.lastBalanceChanges.getOrDefault(viewer, 0));
         return ApiResponse.of("ok", true).detail(detail);
     }
 
+    private long version(String roomId) {
+        SevenPokerGame.State state = rooms.get(roomId);
+        return state == null ? 0 : state.version;
+    }
+
+    @GetMapping("/state")
+    public CompletableFuture<Object> state(@RequestParam String roomId,
+                                           @RequestParam String viewer,
+                                           @RequestParam(required = false) Long since,
+                                           @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        // the snapshot carries the viewer's balance, which changes without a room version bump
+        return ConditionalState.serve(push, GAME, roomId, since, ifNoneMatch,
+                () -> version(roomId), () -> SessionStore.get(viewer), () -> snapshot(roomId, viewer));
+    }
+
+    @GetMapping("/equity")
+    public CompletableFuture<Object> equity(@RequestParam String roomId, @RequestParam String viewer) {
+        // read the table inside the room's mailbox, run the rollouts off it
+        return RoomExecutor.submit(roomId, () -> {
+            SevenPokerGame.State state = rooms.get(roomId);
+            return state == null || !state.inProgress ? null : game.equitySpot(state, viewer);
+        }).<Object>thenApplyAsync(spot -> {
+            if (spot == null) {
+                return ApiResponse.of("ok", false).detail("not in a live hand");
+            }
+            Map<String, Object> detail = new LinkedHashMap<>();
+            // late streets are small enough to enumerate exactly; otherwise sample
+            OptionalDouble exact = StudExact.equity(spot);
+            if (exact.isPresent()) {
+                detail.put("equity", exact.getAsDouble());
+                detail.put("exact", true);
+            } else {
+                detail.put("equity", StudEquity.equity(spot));
+                detail.put("exact", false);
+                detail.put("trials", StudEquity.DEFAULT_TRIALS);
+            }
+            detail.put("opponents", spot.opponents().length);
+            return ApiResponse.of("ok", true).detail(detail);
+        });
+    }
+
     @PostMapping("/bet")
-    public Object bet(@RequestParam String roomId,
+    public CompletableFuture<Object> bet(@RequestParam String roomId,
                       @RequestParam String user,
                       @RequestParam int amount) {
-        SevenPokerGame.State state = ensureState(roomId);
-        SevenPokerGame.Side side = state.players.get(user);
-        int previous = side != null ? side.contributed : 0;
-        game.bet(state, user, amount);
-        applyContributionDelta(state, user, previous);
-        applyPayouts(state);
-        Map<String, Object> payload = new LinkedHashMap<>();
-        payload.put("pot", state.pot);
-        payload.put("currentBet", state.currentBet);
-        if (state.turn != null) {
-            payload.put("turn", state.turn);
-        }
-        payload.put("inProgress", state.inProgress);
-        if (!state.inProgress) {
-            payload.put("winners", new ArrayList<>(state.winners));
-            payload.put("payouts", new LinkedHashMap<>(state.payouts));
-        }
-        includeBalance(payload, state, user);
-        return ApiResponse.of("ok", true).detail(payload);
+        return act(roomId, () -> {
+            SevenPokerGame.State state = ensureState(roomId);
+            SevenPokerGame.Side side = state.players.get(user);
+            int previous = side != null ? side.contributed : 0;
+            game.bet(state, user, amount);
+            applyContributionDelta(state, user, previous);
+            applyPayouts(state);
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("pot", state.pot);
+            payload.put("currentBet", state.currentBet);
+            if (state.turn != null) {
+                payload.put("turn", state.turn);
+            }
+            payload.put("inProgress", state.inProgress);
+            if (!state.inProgress) {
+                payload.put("winners", new ArrayList<>(state.winners));
+                payload.put("payouts", new LinkedHashMap<>(state.payouts));
+            }
+            includeBalance(payload, state, user);
+            return ApiResponse.of("ok", true).detail(payload);
+        });
     }
 
     @PostMapping("/call")
-    public Object call(@RequestParam String roomId, @RequestParam String user) {
-        SevenPokerGame.State state = ensureState(roomId);
-        SevenPokerGame.Side side = state.players.get(user);
-        int previous = side != null ? side.contributed : 0;
-        game.call(state, user);
-        applyContributionDelta(state, user, previous);
-        applyPayouts(state);
-        Map<String, Object> payload = new LinkedHashMap<>();
-        payload.put("pot", state.pot);
-        payload.put("currentBet", state.currentBet);
-        if (state.turn != null) {
-            payload.put("turn", state.turn);
-        }
-        payload.put("inProgress", state.inProgress);
-        if (!state.inProgress) {
-            payload.put("winners", new ArrayList<>(state.winners));
-            payload.put("payouts", new LinkedHashMap<>(state.payouts));
-        }
-        includeBalance(payload, state, user);
-        return ApiResponse.of("ok", true).detail(payload);
+    public CompletableFuture<Object> call(@RequestParam String roomId, @RequestParam String user) {
+        return act(roomId, () -> {
+            SevenPokerGame.State state = ensureState(roomId);
+            SevenPokerGame.Side side = state.players.get(user);
+            int previous = side != null ? side.contributed : 0;
+            game.call(state, user);
+            applyContributionDelta(state, user, previous);
+            applyPayouts(state);
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("pot", state.pot);
+            payload.put("currentBet", state.currentBet);
+            if (state.turn != null) {
+                payload.put("turn", state.turn);
+            }
+            payload.put("inProgress", state.inProgress);
+            if (!state.inProgress) {
+                payload.put("winners", new ArrayList<>(state.winners));
+                payload.put("payouts", new LinkedHashMap<>(state.payouts));
+            }
+            includeBalance(payload, state, user);
+            return ApiResponse.of("ok", true).detail(payload);
+        });
     }
 
     @PostMapping("/check")
-    public Object check(@RequestParam String roomId, @RequestParam String user) {
-        SevenPokerGame.State state = ensureState(roomId);
-        SevenPokerGame.Side side = state.players.get(user);
-        int previous = side != null ? side.contributed : 0;
-        game.check(state, user);
-        applyContributionDelta(state, user, previous);
-        applyPayouts(state);
-        Map<String, Object> payload = new LinkedHashMap<>();
-        if (state.turn != null) {
-            payload.put("turn", state.turn);
-        }
-        payload.put("inProgress", state.inProgress);
-        if (!state.inProgress) {
-            payload.put("winners", new ArrayList<>(state.winners));
-            payload.put("payouts", new LinkedHashMap<>(state.payouts));
-        }
-        includeBalance(payload, state, user);
-        return ApiResponse.of("ok", true).detail(payload);
+    public CompletableFuture<Object> check(@RequestParam String roomId, @RequestParam String user) {
+        return act(roomId, () -> {
+            SevenPokerGame.State state = ensureState(roomId);
+            SevenPokerGame.Side side = state.players.get(user);
+            int previous = side != null ? side.contributed : 0;
+            game.check(state, user);
+            applyContributionDelta(state, user, previous);
+            applyPayouts(state);
+            Map<String, Object> payload = new LinkedHashMap<>();
+            if (state.turn != null) {
+                payload.put("turn", state.turn);
+            }
+            payload.put("inProgress", state.inProgress);
+            if (!state.inProgress) {
+                payload.put("winners", new ArrayList<>(state.winners));
+                payload.put("payouts", new LinkedHashMap<>(state.payouts));
+            }
+            includeBalance(payload, state, user);
+            return ApiResponse.of("ok", true).detail(payload);
+        });
     }
 
     @PostMapping("/fold")
-    public Object fold(@RequestParam String roomId, @RequestParam String user) {
-        SevenPokerGame.State state = ensureState(roomId);
-        SevenPokerGame.Side side = state.players.get(user);
-        int previous = side != null ? side.contributed : 0;
-        game.fold(state, user);
-        applyContributionDelta(state, user, previous);
-        applyPayouts(state);
-        Map<String, Object> payload = new LinkedHashMap<>();
-        if (state.turn != null) {
-            payload.put("turn", state.turn);
-        }
-        payload.put("inProgress", state.inProgress);
-        payload.put("winners", new ArrayList<>(state.winners));
-        payload.put("payouts", new LinkedHashMap<>(state.payouts));
-        includeBalance(payload, state, user);
-        return ApiResponse.of("ok", true).detail(payload);
+    public CompletableFuture<Object> fold(@RequestParam String roomId, @RequestParam String user) {
+        return act(roomId, () -> {
+            SevenPokerGame.State state = ensureState(roomId);
+            SevenPokerGame.Side side = state.players.get(user);
+            int previous = side != null ? side.contributed : 0;
+            game.fold(state, user);
+            applyContributionDelta(state, user, previous);
+            applyPayouts(state);
+            Map<String, Object> payload = new LinkedHashMap<>();
+            if (state.turn != null) {
+                payload.put("turn", state.turn);
+            }
+            payload.put("inProgress", state.inProgress);
+            payload.put("winners", new ArrayList<>(state.winners));
+            payload.put("payouts", new LinkedHashMap<>(state.payouts));
+            includeBalance(payload, state, user);
+            return ApiResponse.of("ok", true).detail(payload);
+        });
     }
 
     @PostMapping("/next")
-    public Object next(@RequestParam String roomId) {
-        SevenPokerGame.State state = ensureState(roomId);
-        game.next(state);
-        applyPayouts(state);
-        Map<String, Object> payload = new LinkedHashMap<>();
-        payload.put("stage", state.stage);
-        payload.put("stageName", state.stageName);
-        if (state.turn != null) {
-            payload.put("turn", state.turn);
-        }
-        payload.put("inProgress", state.inProgress);
-        if (!state.inProgress) {
-            payload.put("winners", new ArrayList<>(state.winners));
-            payload.put("payouts", new LinkedHashMap<>(state.payouts));
-        }
-        return ApiResponse.of("ok", true).detail(payload);
+    public CompletableFuture<Object> next(@RequestParam String roomId) {
+        return act(roomId, () -> {
+            SevenPokerGame.State state = ensureState(roomId);
+            game.next(state);
+            applyPayouts(state);
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("stage", state.stage);
+            payload.put("stageName", state.stageName);
+            if (state.turn != null) {
+                payload.put("turn", state.turn);
+            }
+            payload.put("inProgress", state.inProgress);
+            if (!state.inProgress) {
+                payload.put("winners", new ArrayList<>(state.winners));
+                payload.put("payouts", new LinkedHashMap<>(state.payouts));
+            }
+            return ApiResponse.of("ok", true).detail(payload);
+        });
     }
 }
@@ -0,0 +1,37 @@
+package com.cardgame.cardserver.api;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Per-viewer views of a room, built once per state version. Only used from inside the room's mailbox,
+ * so the per-room map needs no locking. Cached views are shared between responses and must not be
+ * modified after they are built.
+ */
+final class ViewCache<V> {
+
+    /** Key used for every viewer who is not seated in the room: they all see the same masked view. */
+    static final String SPECTATOR = "";
+
+    private static final class Entry<V> {
+        long version = -1;
+        final Map<String, V> views = new HashMap<>();
+    }
+
+    private final Map<String, Entry<V>> rooms = new ConcurrentHashMap<>();
+
+    V get(String roomId, long version, String viewer, Function<String, V> build) {
+        Entry<V> entry = rooms.computeIfAbsent(roomId, k -> new Entry<>());
+        if (entry.version != version) {
+            entry.views.clear();
+            entry.version = version;
+        }
+        return entry.views.computeIfAbsent(viewer, build);
+    }
+
+    void invalidate(String roomId) {
+        rooms.remove(roomId);
+    }
+}
@@ -0,0 +1,23 @@
+package com.cardgame.cardserver.config;
+import com.cardgame.cardserver.core.SessionStore;
+import com.cardgame.cardserver.core.wallet.WalletLog;
+import jakarta.annotation.PreDestroy;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import java.nio.file.Path;
+import java.time.Duration;
+/** cardgame.wallet.dir 가 있으면 시작할 때 지갑 WAL 을 복구·오픈하고, 종료할 때 스냅샷을 남기고 닫는다 */
+@Configuration
+public class WalletConfig {
+    public WalletConfig(Environment env){
+        String dir = env.getProperty("cardgame.wallet.dir");
+        if(dir == null || dir.isBlank()) return;
+        WalletLog.Options d = WalletLog.defaults(Path.of(dir));
+        SessionStore.open(new WalletLog.Options(d.dir(),
+                env.getProperty("cardgame.wallet.segment-bytes", Integer.class, d.segmentBytes()),
+                env.getProperty("cardgame.wallet.flush-interval", Duration.class, Duration.ofMillis(d.flushMillis())).toMillis(),
+                env.getProperty("cardgame.wallet.flush-records", Integer.class, d.flushRecords()),
+                env.getProperty("cardgame.wallet.snapshot-interval", Duration.class, Duration.ofMillis(d.snapshotMillis())).toMillis()));
+    }
+    @PreDestroy public void close(){ SessionStore.close(); }
+}
@@ -0,0 +1,15 @@
+package com.cardgame.cardserver.config;
+import com.cardgame.cardserver.api.RoomPushHandler;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+    private final RoomPushHandler push;
+    public WebSocketConfig(RoomPushHandler push) { this.push = push; }
+    @Override public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(push, "/api/ws/rooms").setAllowedOrigins("*");
+    }
+}
@@ -3,10 +3,11 @@ import java.util.*;
 public class BaccaratGame {
     public static class Side { public final List<Card> cards=new ArrayList<>(); public int total; }
     public static class State { public boolean inProgress; public Side player=new Side(); public Side banker=new Side(); public int delta; }
-    private final Deck deck;
-    public BaccaratGame(int decks){ this.deck=new Deck(decks); }
+    private final Shoe deck;
+    public BaccaratGame(int decks){ this.deck=new Shoe(decks); }
     private static int point(List<Card> cs){ int t=0; for(Card c:cs) t+=c.pip(); return t%10; }
     public State bet(String main, boolean pp, boolean pb, boolean super6, int amount, boolean commission){
+        deck.beginRound();
         State s=new State(); s.inProgress=true;
         s.player.cards.add(deck.draw()); s.banker.cards.add(deck.draw());
         s.player.cards.add(deck.draw()); s.banker.cards.add(deck.draw());
@@ -1,20 +1,49 @@
 package com.cardgame.cardserver.core;
 
+import com.cardgame.cardserver.core.baccarat.BaccaratRoads;
+
 import java.util.*;
 
 public class BaccaratRoom {
     public static class Side { public final List<Card> cards=new ArrayList<>(); public int total; }
+    /** 베팅 종류. 이름이 그대로 ledger JSON 키 */
+    public enum Bet {
+        MAIN_PLAYER, MAIN_BANKER, MAIN_TIE, PAIR_P, PAIR_B, SUPER6;
+        public static final Bet[] ALL = values();
+        /** "player"/"banker"/"tie" (대소문자 무시) → MAIN_*, 그 외 null */
+        public static Bet main(String pick){
+            if("PLAYER".equalsIgnoreCase(pick)) return MAIN_PLAYER;
+            if("BANKER".equalsIgnoreCase(pick)) return MAIN_BANKER;
+            if("TIE".equalsIgnoreCase(pick)) return MAIN_TIE;
+            return null;
+        }
+        public boolean isMain(){ return ordinal() <= MAIN_TIE.ordinal(); }
+    }
     public static class Round {
         public boolean inProgress;
         public Side player=new Side(); public Side banker=new Side();
-        public Map<String, Map<String,Integer>> ledger = new LinkedHashMap<>(); // user -> {MAIN:amount, PP:0/amount, BP:..., S6:...}
+        // 좌석별 베팅액: stakes[seat][Bet.ordinal()], seats[seat] = user (입장 순)
+        public String[] seats = new String[4];
+        public int[][] stakes = new int[4][Bet.ALL.length];
+        public int seatCount;
         public Map<String,Integer> settle = new LinkedHashMap<>(); // user -> delta
         public boolean settlementApplied;
+        public long version; // 액션마다 +1 (/state ETag, since=)
     }
-    private final Deck deck;
+    private final Shoe deck;
     public final Round r = new Round();
+    /** 현재 슈의 출목표 (bead plate / big road / 파생 road), 라운드마다 O(1) 갱신 */
+    public final BaccaratRoads roads = new BaccaratRoads();
+    // 남은 슈 구성 (Card.Rank ordinal 별). 라운드마다 나온 카드만 빼고, 셔플되면 다시 센다
+    private int[] composition;
+    private int compositionShuffles;
+    private long rounds;
 
-    public BaccaratRoom(int decks){ this.deck = new Deck(Math.max(1,decks)); }
+    public BaccaratRoom(int decks){ this.deck = new Shoe(Math.max(1,decks)); this.composition = deck.leftByRank(); }
+
+    /** 다음 라운드가 뽑을 슈의 랭크별 잔량 (복사본) */
+    public int[] composition(){ return composition.clone(); }
+    public long rounds(){ return rounds; }
 
     private static int point(List<Card> cs){ int t=0; for(Card c: cs) t+=c.pip(); return t%10; }
 
@@ -23,78 +52,106 @@ public class BaccaratRoom {
         r.player = new Side();
         r.banker = new Side();
         r.settle.clear();
-        r.ledger.clear();
+        for(int i=0; i<r.seatCount; i++){ r.seats[i] = null; Arrays.fill(r.stakes[i], 0); }
+        r.seatCount = 0;
         r.settlementApplied = false;
     }
 
-    public void place(String user, String main, int amount, boolean pp, boolean bp, boolean s6){
-        r.ledger.putIfAbsent(user, new LinkedHashMap<>());
-        var m = r.ledger.get(user);
-        m.put("MAIN_"+main.toUpperCase(), m.getOrDefault("MAIN_"+main.toUpperCase(),0)+amount);
-        if(pp) m.put("PAIR_P", m.getOrDefault("PAIR_P",0)+amount);
-        if(bp) m.put("PAIR_B", m.getOrDefault("PAIR_B",0)+amount);
-        if(s6) m.put("SUPER6", m.getOrDefault("SUPER6",0)+amount);
+    /** main 은 Bet.main(...) 결과 (MAIN_* 중 하나) */
+    public void place(String user, Bet main, int amount, boolean pp, boolean bp, boolean s6){
+        if(main==null || !main.isMain()) throw new IllegalArgumentException("main must be PLAYER, BANKER or TIE");
+        int seat = seat(user);      // 좌석 배열이 늘어날 수 있으므로 먼저 구한다
+        int[] m = r.stakes[seat];
+        m[main.ordinal()] += amount;
+        if(pp) m[Bet.PAIR_P.ordinal()] += amount;
+        if(bp) m[Bet.PAIR_B.ordinal()] += amount;
+        if(s6) m[Bet.SUPER6.ordinal()] += amount;
     }
 
-    private static int settleMain(String pick, String winner, int amount, boolean commission){
-        if("PLAYER".equals(pick)){
-            if("PLAYER".equals(winner)) return amount * 2;
-            if("TIE".equals(winner)) return amount;
-            return 0;
+    // 좌석 수가 적어 선형 탐색; 처음 베팅하는 유저는 뒤에 추가
+    private int seat(String user){
+        for(int i=0; i<r.seatCount; i++) if(r.seats[i].equals(user)) return i;
+        if(r.seatCount == r.seats.length){
+            int n = r.seats.length * 2;
+            r.seats = Arrays.copyOf(r.seats, n);
+            r.stakes = Arrays.copyOf(r.stakes, n);
+            for(int i=r.seatCount; i<n; i++) r.stakes[i] = new int[Bet.ALL.length];
         }
-        if("BANKER".equals(pick)){
-            if("BANKER".equals(winner)){
-                int profit = commission ? (int)Math.round(amount * 0.95) : amount;
-                return amount + profit;
-            }
-            if("TIE".equals(winner)) return amount;
-            return 0;
+        r.seats[r.seatCount] = user;
+        return r.seatCount++;
+    }
+
+    private int[] stakesOf(String user){
+        for(int i=0; i<r.seatCount; i++) if(r.seats[i].equals(user)) return r.stakes[i];
+        return null;
+    }
+
+    /** /state 등 JSON 응답용: user -> {MAIN_PLAYER: amount, PAIR_P: amount, ...} (0 인 항목 제외) */
+    public Map<String, Map<String,Integer>> ledgerView(){
+        Map<String, Map<String,Integer>> out = new LinkedHashMap<>();
+        for(int i=0; i<r.seatCount; i++){
+            Map<String,Integer> m = new LinkedHashMap<>();
+            for(Bet b: Bet.ALL) if(r.stakes[i][b.ordinal()]!=0) m.put(b.name(), r.stakes[i][b.ordinal()]);
+            out.put(r.seats[i], m);
         }
-        if("TIE".equals(pick)){
-            return "TIE".equals(winner) ? amount * 9 : 0;
+        return out;
+    }
+
+    private static int settleMain(Bet pick, Bet winner, int amount, boolean commission){
+        if(pick==winner){
+            return switch(pick){
+                case MAIN_PLAYER -> amount * 2;
+                case MAIN_BANKER -> amount + (commission ? (int)Math.round(amount * 0.95) : amount);
+                default -> amount * 9;
+            };
         }
-        return 0;
+        return winner==Bet.MAIN_TIE ? amount : 0;   // 타이면 플레이어/뱅커 베팅 반환
     }
 
     public void dealAndSettle(boolean commission){
+        deck.beginRound();
         r.inProgress = true; r.player = new Side(); r.banker = new Side(); r.settle.clear(); r.settlementApplied = false;
         r.player.cards.add(deck.draw()); r.banker.cards.add(deck.draw());
         r.player.cards.add(deck.draw()); r.banker.cards.add(deck.draw());
         r.player.total = point(r.player.cards); r.banker.total = point(r.banker.cards);
         if(r.player.total<=5){ r.player.cards.add(deck.draw()); r.player.total = point(r.player.cards); }
         if(r.banker.total<=5){ r.banker.cards.add(deck.draw()); r.banker.total = point(r.banker.cards); }
-        String winner = r.player.total==r.banker.total ? "TIE" : (r.player.total>r.banker.total?"PLAYER":"BANKER");
+        Bet winner = r.player.total==r.banker.total ? Bet.MAIN_TIE : (r.player.total>r.banker.total? Bet.MAIN_PLAYER : Bet.MAIN_BANKER);
         boolean pPair = r.player.cards.size()>=2 && r.player.cards.get(0).rank()==r.player.cards.get(1).rank();
         boolean bPair = r.banker.cards.size()>=2 && r.banker.cards.get(0).rank()==r.banker.cards.get(1).rank();
 
-        for(var e: r.ledger.entrySet()){
-            String user = e.getKey(); var bet = e.getValue();
-            int delta=0;
-            for(var b: bet.entrySet()){
-                String k=b.getKey(); int amt=b.getValue();
-                if(k.startsWith("MAIN_")){
-                    String pick = k.substring("MAIN_".length());
-                    delta += settleMain(pick, winner, amt, commission);
-                }else if("PAIR_P".equals(k) && pPair){ delta += amt*12; }
-                else if("PAIR_B".equals(k) && bPair){ delta += amt*12; }
-                else if("SUPER6".equals(k) && "BANKER".equals(winner) && r.banker.total==6){ delta += amt*13; }
-            }
-            r.settle.put(user, delta);
+        boolean super6 = winner==Bet.MAIN_BANKER && r.banker.total==6;
+
+        for(int i=0; i<r.seatCount; i++){
+            int[] m = r.stakes[i];
+            int delta = settleMain(Bet.MAIN_PLAYER, winner, m[Bet.MAIN_PLAYER.ordinal()], commission)
+                      + settleMain(Bet.MAIN_BANKER, winner, m[Bet.MAIN_BANKER.ordinal()], commission)
+                      + settleMain(Bet.MAIN_TIE, winner, m[Bet.MAIN_TIE.ordinal()], commission);
+            if(pPair) delta += m[Bet.PAIR_P.ordinal()]*12;
+            if(bPair) delta += m[Bet.PAIR_B.ordinal()]*12;
+            if(super6) delta += m[Bet.SUPER6.ordinal()]*13;
+            r.settle.put(r.seats[i], delta);
         }
         r.inProgress=false;
+        rounds++;
+        boolean newShoe = deck.shuffles()!=compositionShuffles;   // 이번 라운드 전에 셔플됨 → 새 슈의 첫 라운드
+        if(newShoe) roads.newShoe();
+        roads.record(r.player.total, r.banker.total, pPair, bPair);
+        if(newShoe){
+            composition = deck.leftByRank(); compositionShuffles = deck.shuffles();
+        }else{
+            for(Card c: r.player.cards) composition[c.rank().ordinal()]--;
+            for(Card c: r.banker.cards) composition[c.rank().ordinal()]--;
+        }
     }
 
     public boolean ready(Collection<String> users){
         if(users==null || users.isEmpty()) return false;
         for(String user: users){
             if(user==null) continue;
-            var m = r.ledger.get(user);
-            if(m==null || m.isEmpty()) return false;
-            boolean hasMain=false;
-            for(var e: m.entrySet()){
-                if(e.getKey().startsWith("MAIN_") && e.getValue()>0){ hasMain=true; break; }
-            }
-            if(!hasMain) return false;
+            int[] m = stakesOf(user);
+            if(m==null) return false;
+            if(m[Bet.MAIN_PLAYER.ordinal()]<=0 && m[Bet.MAIN_BANKER.ordinal()]<=0 && m[Bet.MAIN_TIE.ordinal()]<=0) return false;
         }
         return true;
     }
@@ -8,8 +8,8 @@ public class BlackjackGame {
         public List<Hand> playerHands = new ArrayList<>(); public int activeIndex;
         public Hand dealer = new Hand();
     }
-    private final Deck deck; private final State s=new State();
-    public BlackjackGame(int decks){ this.deck=new Deck(decks); s.decks=decks; }
+    private final Shoe deck; private final State s=new State();
+    public BlackjackGame(int decks){ this.deck=new Shoe(decks); s.decks=decks; }
     private static int bestTotal(List<Card> cs){
         int sum=0, aces=0;
         for(Card c: cs){ sum += c.bjValue(); if(c.rank()== Card.Rank.ACE) aces++; }
@@ -18,8 +18,16 @@ public class BlackjackGame {
     }
     private Hand newHand(){ Hand h=new Hand(); s.playerHands.add(h); return h; }
     public int currentBet(){ return s.bet; }
+    public State state(){ return s; }
+    /** 플레이어가 못 본 카드(슈 잔량 + 딜러 홀카드), Card.Rank ordinal 별 개수 */
+    public int[] unseenByRank(){
+        int[] counts = deck.leftByRank();
+        if(s.inProgress && s.dealer.cards.size()>1) counts[s.dealer.cards.get(1).rank().ordinal()]++;
+        return counts;
+    }
     public int handCount(){ return s.playerHands.size(); }
     public State start(int bet){
+        deck.beginRound();
         s.inProgress=true; s.bet=bet; s.delta=0; s.playerHands.clear(); s.activeIndex=0;
         s.dealer=new Hand();
         Hand h1=newHand();
@@ -89,6 +97,6 @@ public class BlackjackGame {
     }
     public State surrender(){
         if(!s.inProgress) return s;
-        s.inProgress=false; s.delta = -(s.bet/2); return s;
+        s.inProgress=false; s.delta = s.bet/2; return s;   // 베팅은 시작 때 이미 차감됨 → 절반 반환
     }
 }
@@ -19,13 +19,14 @@ public class BlackjackRoom {
         public int deltaTotal;              // 정산 총합(방 입장자 sum)
         public Map<String,Integer> settle = new LinkedHashMap<>();
         public boolean settlementApplied;
+        public long version;                // 액션마다 +1 (/state ETag, since=)
     }
 
-    private final Deck deck;
+    private final Shoe deck;
     public final State s = new State();
 
     public BlackjackRoom(int decks){
-        this.deck = new Deck(Math.max(1, decks));
+        this.deck = new Shoe(Math.max(1, decks));
         s.decks = decks;
     }
 
@@ -37,6 +38,7 @@ public class BlackjackRoom {
     }
 
     public State start(Collection<String> users, int bet){
+        deck.beginRound();
         s.inProgress=true; s.bet=bet; s.deltaTotal=0;
         s.hands.clear(); s.finished.clear();
         s.settle.clear(); s.settlementApplied=false;
@@ -2,6 +2,15 @@ package com.cardgame.cardserver.core;
 public record Card(Rank rank, Suit suit){
     public enum Suit { C, D, H, S }
     public enum Rank { TWO,THREE,FOUR,FIVE,SIX,SEVEN,EIGHT,NINE,TEN,JACK,QUEEN,KING,ACE }
+    public static final int COUNT = 52;
+    private static final Card[] CACHE = new Card[COUNT];
+    static {
+        for(Rank r: Rank.values()) for(Suit s: Suit.values()) CACHE[r.ordinal()*4+s.ordinal()] = new Card(r,s);
+    }
+    public static Card of(int index){ return CACHE[index]; }
+    public static Card of(Rank rank, Suit suit){ return CACHE[rank.ordinal()*4+suit.ordinal()]; }
+    /** 0..51, rank-major: rank.ordinal()*4 + suit.ordinal() */
+    public int index(){ return rank.ordinal()*4+suit.ordinal(); }
     public int bjValue(){ return switch(rank){
         case ACE -> 11; case KING,QUEEN,JACK,TEN -> 10; default -> (rank.ordinal()+2);
     };}
@@ -1,19 +1,33 @@
 package com.cardgame.cardserver.core;
 import java.util.*;
+/** Array-backed shoe of card indexes (see Card.index()); shuffled in place, dealt by cursor. */
 public class Deck {
-    private final Deque<Card> q = new ArrayDeque<>();
-    public Deck(int decks){
-        List<Card> all=new ArrayList<>();
-        for(int d=0; d<Math.max(1,decks); d++){
-            for(Card.Suit s: Card.Suit.values()){
-                for(Card.Rank r: Card.Rank.values()){
-                    all.add(new Card(r,s));
-                }
-            }
+    private final byte[] cards;
+    private final Random rng;
+    private int cursor;
+    public Deck(int decks){ this(decks, new Random()); }
+    public Deck(int decks, Random rng){
+        this.rng = rng;
+        cards = new byte[Card.COUNT * Math.max(1,decks)];
+        for(int i=0; i<cards.length; i++) cards[i] = (byte)(i % Card.COUNT);
+        shuffle();
+    }
+    /** Puts every card back and reshuffles without allocating. */
+    public void shuffle(){
+        for(int i=cards.length-1; i>0; i--){
+            int j = rng.nextInt(i+1);
+            byte t = cards[i]; cards[i] = cards[j]; cards[j] = t;
         }
-        Collections.shuffle(all, new Random());
-        q.addAll(all);
+        cursor = 0;
+    }
+    public int drawIndex(){ if(cursor>=cards.length) throw new RuntimeException("empty deck"); return cards[cursor++]; }
+    public Card draw(){ return Card.of(drawIndex()); }
+    public int left(){ return cards.length - cursor; }
+    /** Cards still to be dealt, counted by Card.Rank ordinal. */
+    public int[] leftByRank(){
+        int[] counts = new int[13];
+        for(int i=cursor; i<cards.length; i++) counts[cards[i] >> 2]++;
+        return counts;
     }
-    public Card draw(){ if(q.isEmpty()) throw new RuntimeException("empty deck"); return q.removeFirst(); }
-    public int left(){ return q.size(); }
+    public int size(){ return cards.length; }
 }
@@ -1,7 +1,12 @@
 package com.cardgame.cardserver.core;
 import java.util.*;
 public class Room {
-    public enum Game { BLACKJACK, BACCARAT, SEVEN }
+    /** seats: 방 정원 (세븐포커는 한 덱 52장으로 7명까지) */
+    public enum Game {
+        BLACKJACK(7), BACCARAT(7), SEVEN(7);
+        public final int seats;
+        Game(int seats){ this.seats = seats; }
+    }
     public final String id; public final Game game; public final int decks;
     public final Set<String> players = new LinkedHashSet<>(); public String host;
     public final Map<String,Object> state = new HashMap<>();
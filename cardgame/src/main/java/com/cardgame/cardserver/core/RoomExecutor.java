@@ -0,0 +1,107 @@
+package com.cardgame.cardserver.core;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Per-room mailboxes: every action submitted for a room runs on one logical thread, in order,
+ * while different rooms run in parallel on a shared pool. Room state therefore needs no locks.
+ * A mailbox exists only while it has work: once its queue drains it removes itself, so ids that
+ * are only ever read (or never belonged to a room) don't leave mailboxes behind.
+ */
+public final class RoomExecutor {
+
+    private static final int BATCH = 32;
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread t = new Thread(r, "room-" + THREADS.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+    private static final Map<String, Mailbox> MAILBOXES = new ConcurrentHashMap<>();
+
+    private RoomExecutor() {
+    }
+
+    public static <T> CompletableFuture<T> submit(String roomId, Supplier<T> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        enqueue(roomId, () -> {
+            try {
+                result.complete(action.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    public static void execute(String roomId, Runnable action) {
+        enqueue(roomId, action);
+    }
+
+    /** Drops the room's mailbox if nothing is queued or running for it. */
+    public static boolean remove(String roomId) {
+        return MAILBOXES.computeIfPresent(roomId, (k, m) -> m.idle() ? null : m) == null;
+    }
+
+    // enqueue inside compute() so remove() can never drop a mailbox that is about to receive work
+    private static void enqueue(String roomId, Runnable action) {
+        Mailbox box = MAILBOXES.compute(roomId == null ? "" : roomId, (k, m) -> {
+            Mailbox target = m != null ? m : new Mailbox(k);
+            target.queue.add(action);
+            return target;
+        });
+        box.schedule();
+    }
+
+    private static final class Mailbox implements Runnable {
+        private final String roomId;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Mailbox(String roomId) {
+            this.roomId = roomId;
+        }
+
+        boolean idle() {
+            return !scheduled.get() && queue.isEmpty();
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                POOL.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                // bounded batch so one busy room cannot starve the others sharing a pool thread
+                for (int i = 0; i < BATCH; i++) {
+                    Runnable next = queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    try {
+                        next.run();
+                    } catch (RuntimeException ignored) {
+                        // submit() reports failures through its future; plain execute() callers own their errors
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                } else {
+                    // same compute lock as enqueue(): work that arrives now either lands here first or in a new box
+                    MAILBOXES.computeIfPresent(roomId, (k, m) -> m == this && idle() ? null : m);
+                }
+            }
+        }
+    }
+}
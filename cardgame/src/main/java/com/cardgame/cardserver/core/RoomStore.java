@@ -1,14 +1,111 @@
 package com.cardgame.cardserver.core;
-import java.util.*; import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ * 방 목록. id 는 원자적 순번이라 동시 생성에도 겹치지 않고, 게임별 / 빈 자리 있는 방 인덱스를
+ * 생성 순으로 유지해 로비가 전체를 훑지 않고 필터·페이지 조회를 한다.
+ * join/leave 는 방 단위로 잠가 players 와 인덱스를 함께 바꾼다.
+ */
 public class RoomStore {
     private static final Map<String,Room> ROOMS = new ConcurrentHashMap<>();
+    private static final AtomicLong SEQ = new AtomicLong(1000);
+    private static final Map<Room.Game, Index> BY_GAME = new EnumMap<>(Room.Game.class);
+    private static final Map<Room.Game, Index> OPEN = new EnumMap<>(Room.Game.class);
+    static {
+        for(Room.Game g: Room.Game.values()){ BY_GAME.put(g, new Index()); OPEN.put(g, new Index()); }
+    }
+
+    /** 생성 순(id 순번) 정렬 인덱스 + 크기 (ConcurrentSkipListMap.size() 는 O(n) 이라 따로 센다) */
+    private static final class Index {
+        final ConcurrentSkipListMap<Long,Room> rooms = new ConcurrentSkipListMap<>();
+        final AtomicInteger size = new AtomicInteger();
+        void add(long seq, Room r){ if(rooms.put(seq, r)==null) size.incrementAndGet(); }
+        void remove(long seq){ if(rooms.remove(seq)!=null) size.decrementAndGet(); }
+    }
+
+    /** 로비 한 페이지: after 다음부터 최대 size 개, 다음 페이지 커서(next, 없으면 null)와 전체 개수 */
+    public record Page(List<Room> rooms, String next, int total){}
+
     public static Room create(Room.Game g, int decks, String host){
-        String id = String.valueOf(System.currentTimeMillis()).substring(8) + new Random().nextInt(90);
-        Room r = new Room(id, g, decks, host);
-        ROOMS.put(id, r); return r;
+        long seq = SEQ.incrementAndGet();
+        Room r = new Room(String.valueOf(seq), g, decks, host);
+        synchronized(r){
+            ROOMS.put(r.id, r);
+            BY_GAME.get(g).add(seq, r);
+            reindex(seq, r);
+        }
+        return r;
     }
     public static Collection<Room> list(){ return ROOMS.values(); }
     public static Room get(String id){ return ROOMS.get(id); }
-    public static boolean join(String id, String user){ Room r=get(id); if(r==null) return false; r.players.add(user); return true; }
-    public static void leave(String id, String user){ Room r=get(id); if(r!=null) r.players.remove(user); }
+    public static boolean join(String id, String user){
+        Room r=get(id); if(r==null) return false;
+        synchronized(r){
+            if(ROOMS.get(id) != r) return false;   // 잠금을 기다리는 사이 removeIf 로 정리된 방
+            if(!r.players.contains(user) && r.players.size() >= r.game.seats) return false;
+            r.players.add(user); reindex(seq(r), r); return true;
+        }
+    }
+    public static void leave(String id, String user){
+        Room r=get(id); if(r==null) return;
+        synchronized(r){ r.players.remove(user); if(ROOMS.get(id) == r) reindex(seq(r), r); }
+    }
+
+    /** still(id) 가 참일 때만 (방 잠금 안에서 다시 확인) 목록과 인덱스에서 뺀다. 유휴 방 정리용 */
+    public static boolean removeIf(String id, java.util.function.Predicate<String> still){
+        Room r=get(id); if(r==null) return true;
+        synchronized(r){
+            if(!still.test(id)) return false;
+            ROOMS.remove(id, r);
+            long seq = seq(r);
+            BY_GAME.get(r.game).remove(seq); OPEN.get(r.game).remove(seq);
+        }
+        RoomExecutor.remove(id);
+        return true;
+    }
+
+    /**
+     * game==null 이면 전 게임을 id 순으로 합쳐서, openOnly 면 빈 자리 있는 방만.
+     * after 는 이전 페이지의 next (첫 페이지는 null). 방 id 형식이 아니면 null 을 돌려준다.
+     */
+    public static Page page(Room.Game game, boolean openOnly, String after, int size){
+        long from;
+        if(after==null || after.isBlank()) from = Long.MIN_VALUE;
+        else try{ from = Long.parseLong(after); }catch(NumberFormatException e){ return null; }
+        var indexes = openOnly ? OPEN : BY_GAME;
+        List<Iterator<Map.Entry<Long,Room>>> its = new ArrayList<>();
+        int total = 0;
+        for(Room.Game g: Room.Game.values()){
+            if(game!=null && g!=game) continue;
+            Index idx = indexes.get(g);
+            its.add(idx.rooms.tailMap(from, false).entrySet().iterator());
+            total += idx.size.get();
+        }
+        // 게임별 인덱스가 각각 정렬돼 있으므로 size 개만 병합
+        List<Map.Entry<Long,Room>> heads = new ArrayList<>(Collections.nCopies(its.size(), null));
+        for(int i=0; i<its.size(); i++) if(its.get(i).hasNext()) heads.set(i, its.get(i).next());
+        List<Room> out = new ArrayList<>(Math.min(size, 64));
+        while(out.size() < size){
+            int min = -1;
+            for(int i=0; i<heads.size(); i++){
+                if(heads.get(i)!=null && (min<0 || heads.get(i).getKey() < heads.get(min).getKey())) min = i;
+            }
+            if(min<0) break;
+            out.add(heads.get(min).getValue());
+            heads.set(min, its.get(min).hasNext() ? its.get(min).next() : null);
+        }
+        boolean more = heads.stream().anyMatch(Objects::nonNull);
+        String next = more && !out.isEmpty() ? out.get(out.size()-1).id : null;
+        return new Page(out, next, total);
+    }
+
+    // r 의 잠금 안에서 호출
+    private static void reindex(long seq, Room r){
+        if(r.players.size() < r.game.seats) OPEN.get(r.game).add(seq, r);
+        else OPEN.get(r.game).remove(seq);
+    }
+    private static long seq(Room r){ return Long.parseLong(r.id); }
 }
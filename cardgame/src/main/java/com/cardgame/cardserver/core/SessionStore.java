@@ -1,9 +1,49 @@
 package com.cardgame.cardserver.core;
-import java.util.Map; import java.util.concurrent.ConcurrentHashMap;
-/** TODO(DB): replace with persistent store */
+import java.util.LinkedHashMap; import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap; import java.util.concurrent.atomic.AtomicLong;
+import com.cardgame.cardserver.core.wallet.WalletLog;
+/**
+ * User balances. After open() every change is also appended to a {@link WalletLog} and survives restarts;
+ * without it (simulators, benchmarks) balances live in memory only.
+ */
 public class SessionStore {
-    private static final Map<String,Integer> BAL = new ConcurrentHashMap<>();
-    public static int get(String user){ return BAL.getOrDefault(user, 10000); }
-    public static int set(String user, int val){ BAL.put(user,val); return val; }
-    public static int add(String user, int delta){ int v=get(user)+delta; BAL.put(user,v); return v; }
+    public static final int INITIAL_BALANCE = 10000;
+    // one atomic cell per user: concurrent add/set never lose updates and never lock the map
+    private static final Map<String,AtomicLong> BAL = new ConcurrentHashMap<>();
+    private static AtomicLong cell(String user){
+        AtomicLong c = BAL.get(user);
+        return c != null ? c : BAL.computeIfAbsent(user, k -> new AtomicLong(INITIAL_BALANCE));
+    }
+    public static int get(String user){ AtomicLong c = BAL.get(user); return c == null ? INITIAL_BALANCE : (int)c.get(); }
+    private static volatile WalletLog LOG;
+    public static int set(String user, int val){
+        WalletLog log = LOG;
+        if(log == null){ cell(user).set(val); return val; }
+        return (int)log.set(user, cell(user), val);
+    }
+    public static int add(String user, int delta){
+        WalletLog log = LOG;
+        return log == null ? (int)cell(user).addAndGet(delta) : (int)log.add(user, cell(user), delta);
+    }
+
+    /** Recovers the balances logged in options.dir() and logs every change from now on. */
+    public static synchronized void open(WalletLog.Options options){
+        if(LOG != null) throw new IllegalStateException("wallet log already open");
+        LOG = WalletLog.open(options, BAL, INITIAL_BALANCE);
+    }
+    /** Flushes and snapshots the log, then goes back to memory only. */
+    public static synchronized void close(){
+        WalletLog log = LOG; LOG = null;
+        if(log != null) log.close();
+    }
+    public static Map<String,Object> logStats(){ WalletLog log = LOG; return log == null ? Map.of() : log.stats(); }
+    /** Applies a whole settlement in one pass; returns user -> new balance in the map's iteration order. */
+    public static Map<String,Integer> applyAll(Map<String,Integer> deltas){
+        Map<String,Integer> balances = new LinkedHashMap<>();
+        for(var e: deltas.entrySet()){
+            Integer d = e.getValue();
+            balances.put(e.getKey(), add(e.getKey(), d == null ? 0 : d));
+        }
+        return balances;
+    }
 }
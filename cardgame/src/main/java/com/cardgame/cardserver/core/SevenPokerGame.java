@@ -1,7 +1,10 @@
 package com.cardgame.cardserver.core;
 
-import com.cardgame.cardserver.core.poker.PokerEval;
 import com.cardgame.cardserver.core.poker.PokerEval.HandScore;
+import com.cardgame.cardserver.core.poker.SevenCardEval;
+import com.cardgame.cardserver.core.poker.StudEquity;
+import com.cardgame.cardserver.core.poker.StudExact;
+import com.cardgame.cardserver.util.LongFloatCache;
 
 import java.util.*;
 
@@ -9,6 +12,14 @@ public class SevenPokerGame {
 
     private static final String SHOWDOWN = "Showdown";
     private static final int MAX_RAISES_PER_STREET = 3;
+    // AI decisions run on the room's mailbox thread, so they trade precision (~4.4% at 95%) for speed:
+    // one rollout leaf on the calling thread, or exact enumeration when that is no more work
+    private static final int AI_EQUITY_TRIALS = 500;
+    private static final long SUIT_BITS = 0x1111111111111L;
+    // one cache per room thread; draw-potential entries use bit 63, which no card mask has
+    private static final ThreadLocal<LongFloatCache> AI_CACHE =
+            ThreadLocal.withInitial(() -> new LongFloatCache(1 << 14));
+    private static final long DRAW_KEY = 1L << 63;
 
     private static final StreetInfo[] STREETS = {
             new StreetInfo("3rd Street", 1, false, true),
@@ -18,7 +29,30 @@ public class SevenPokerGame {
             new StreetInfo("7th Street", 2, true, false)
     };
 
-    private final Random rng = new Random();
+    private final Random rng;
+    // false: AI seats are left for the caller to play with aiStep() (e.g. from the room executor)
+    private final boolean inlineAi;
+    private final int aiEquityTrials;
+
+    public SevenPokerGame() {
+        this(true);
+    }
+
+    public SevenPokerGame(boolean inlineAi) {
+        this(new Random(), inlineAi);
+    }
+
+    /** {@code rng} drives AI profiles, AI decisions and the deck; give each thread its own game. */
+    public SevenPokerGame(Random rng, boolean inlineAi) {
+        this(rng, inlineAi, AI_EQUITY_TRIALS);
+    }
+
+    /** {@code aiEquityTrials} = 0 leaves equity out of AI decisions (hand strength only). */
+    public SevenPokerGame(Random rng, boolean inlineAi, int aiEquityTrials) {
+        this.rng = rng;
+        this.inlineAi = inlineAi;
+        this.aiEquityTrials = aiEquityTrials;
+    }
 
     public static final class Side {
         public final List<Card> cards = new ArrayList<>();
@@ -31,6 +65,11 @@ public class SevenPokerGame {
         public boolean winner = false;
         public Integer payout;
         public HandScore showdownScore;
+        public long showdownPacked;
+        // last AI equity estimate and the spot it was computed for (seen cards, dead cards)
+        private double aiEquity;
+        private long aiEquitySeen = -1L;
+        private long aiEquityDead;
 
         public String profileName() {
             return profile != null ? profile.name : null;
@@ -62,6 +101,7 @@ public class SevenPokerGame {
         public int settledPot;
         public final Set<String> settledBalances = new HashSet<>();
         public final Map<String, Integer> lastBalanceChanges = new LinkedHashMap<>();
+        public long version;
     }
 
     private enum ActionType { NONE, BET, RAISE, CALL, CHECK, FOLD, WIN, LOSE }
@@ -100,32 +140,6 @@ public class SevenPokerGame {
         }
     }
 
-    private static final class LeadScore implements Comparable<LeadScore> {
-        final int category;
-        final int[] keys;
-
-        LeadScore(int category, int[] keys) {
-            this.category = category;
-            this.keys = keys;
-        }
-
-        @Override
-        public int compareTo(LeadScore other) {
-            int cmp = Integer.compare(this.category, other.category);
-            if (cmp != 0) {
-                return cmp;
-            }
-            int len = Math.min(this.keys.length, other.keys.length);
-            for (int i = 0; i < len; i++) {
-                cmp = Integer.compare(this.keys[i], other.keys[i]);
-                if (cmp != 0) {
-                    return cmp;
-                }
-            }
-            return Integer.compare(this.keys.length, other.keys.length);
-        }
-    }
-
     private static final class DealerProfile {
         final String name;
         final double bluffBase;
@@ -182,7 +196,11 @@ public class SevenPokerGame {
         s.lastActor = null;
         s.lastActionType = ActionType.NONE;
         s.lastActionAmount = 0;
-        s.deck = new Deck(1);
+        if (s.deck == null) {
+            s.deck = new Deck(1, new Random(rng.nextLong()));
+        } else {
+            s.deck.shuffle();
+        }
         s.turnIndex = -1;
         s.turn = null;
         s.currentBet = 0;
@@ -507,24 +525,42 @@ public class SevenPokerGame {
     }
 
     private void autoAct(State s) {
+        if (!inlineAi) {
+            return;
+        }
         int guard = 0;
-        while (s.inProgress && s.turn != null && guard++ < 20) {
-            String actor = s.turn;
-            Side side = s.players.get(actor);
-            if (side == null || !side.ai || side.folded) {
-                break;
-            }
-            AiDecision decision = decideFor(s, actor, side);
-            if (decision == null) {
-                break;
-            }
-            applyAction(s, actor, decision.type, decision.amount, false);
+        while (guard++ < 20 && aiStep(s)) {
+            // one AI decision per step until a human is to act
+        }
+    }
+
+    /** Plays one decision for the AI seat to act, if any. Returns whether an AI acted. */
+    public boolean aiStep(State s) {
+        if (!s.inProgress || s.turn == null) {
+            return false;
+        }
+        String actor = s.turn;
+        Side side = s.players.get(actor);
+        if (side == null || !side.ai || side.folded) {
+            return false;
+        }
+        AiDecision decision = decideFor(s, actor, side);
+        if (decision == null) {
+            return false;
         }
+        applyAction(s, actor, decision.type, decision.amount, false);
+        return true;
     }
 
     private AiDecision decideFor(State s, String user, Side side) {
         int toCall = neededToCall(s, user);
         double strength = evaluateStrength(side.cards);
+        StudEquity.Spot spot = equitySpot(s, user);
+        if (aiEquityTrials > 0 && spot != null && spot.opponents().length > 0) {
+            // equity against the open boards, as a multiple of a fair share: a fair share maps to 0.5
+            double share = aiEquity(side, spot) * (spot.opponents().length + 1);
+            strength = (strength + Math.min(1.0, share / 2)) / 2;
+        }
         double streetWeight = side.profile != null && s.stage < side.profile.streetMult.length
                 ? side.profile.streetMult[s.stage]
                 : 1.0;
@@ -604,7 +640,7 @@ public class SevenPokerGame {
         s.stageName = SHOWDOWN;
     }
 
-    private void resolveShowdown(State s) {
+    void resolveShowdown(State s) {
         List<String> contenders = new ArrayList<>();
         for (String uid : s.order) {
             Side side = s.players.get(uid);
@@ -617,20 +653,19 @@ public class SevenPokerGame {
             return;
         }
         s.showdownScores.clear();
-        HandScore best = null;
+        long best = Long.MIN_VALUE;
         for (String uid : contenders) {
             Side side = s.players.get(uid);
-            HandScore score = bestFiveScore(side.cards);
-            side.showdownScore = score;
-            s.showdownScores.put(uid, score);
-            if (best == null || score.compareTo(best) > 0) {
-                best = score;
-            }
+            side.showdownPacked = bestFiveScore(side.cards);
+            best = Math.max(best, side.showdownPacked);
         }
         List<String> winners = new ArrayList<>();
         for (String uid : contenders) {
-            HandScore score = s.showdownScores.get(uid);
-            if (score != null && score.compareTo(best) == 0) {
+            Side side = s.players.get(uid);
+            HandScore score = HandScore.unpack(side.showdownPacked);
+            side.showdownScore = score;
+            s.showdownScores.put(uid, score);
+            if (side.showdownPacked == best) {
                 winners.add(uid);
             }
         }
@@ -683,8 +718,8 @@ public class SevenPokerGame {
         s.winners.addAll(winners);
     }
 
-    private int findLeadIndex(State s) {
-        LeadScore best = null;
+    int findLeadIndex(State s) {
+        long best = Long.MIN_VALUE;
         int bestIdx = -1;
         for (int i = 0; i < s.order.size(); i++) {
             String uid = s.order.get(i);
@@ -692,11 +727,8 @@ public class SevenPokerGame {
             if (side == null || side.folded) {
                 continue;
             }
-            LeadScore score = leadScore(side, s.stage);
-            if (score == null) {
-                continue;
-            }
-            if (best == null || score.compareTo(best) > 0) {
+            long score = leadScore(side, s.stage);
+            if (bestIdx < 0 || score > best) {
                 best = score;
                 bestIdx = i;
             }
@@ -704,33 +736,34 @@ public class SevenPokerGame {
         return bestIdx;
     }
 
-    private LeadScore leadScore(Side side, int stage) {
-        List<Card> openCards = openCards(side, stage);
-        if (openCards.isEmpty()) {
-            return new LeadScore(-1, new int[0]);
-        }
-        int category = leadCategory(openCards);
-        int[] keys = openCards.stream()
-                .sorted(Comparator.<Card>comparingInt(this::cardKey).reversed())
-                .mapToInt(this::cardKey)
-                .toArray();
-        return new LeadScore(category, keys);
+    // packed open-card score: (category + 1) << 40 | open card keys, highest first, 8 bits each
+    private long leadScore(Side side, int stage) {
+        long open = openCards(side, stage);
+        if (open == 0L) {
+            return 0L;
+        }
+        long score = (long) (leadCategory(open) + 1) << 40;
+        int shift = 32;
+        for (long bits = open; bits != 0L; shift -= 8) {
+            int idx = 63 - Long.numberOfLeadingZeros(bits);
+            bits &= ~(1L << idx);
+            score |= (long) ((idx / 4 + 2) * 10 + (idx & 3)) << shift;
+        }
+        return score;
     }
 
-    private int leadCategory(List<Card> openCards) {
-        Map<Integer, Integer> rankCounts = new HashMap<>();
-        Map<Card.Suit, Integer> suitCounts = new EnumMap<>(Card.Suit.class);
-        SortedSet<Integer> ranks = new TreeSet<>();
-        for (Card c : openCards) {
-            int rv = rankValue(c.rank());
-            rankCounts.merge(rv, 1, Integer::sum);
-            suitCounts.merge(c.suit(), 1, Integer::sum);
-            ranks.add(rv);
-        }
+    private int leadCategory(long open) {
+        int count = Long.bitCount(open);
+        int ranks = 0;
         int maxCount = 0;
         int pairCount = 0;
         int tripleCount = 0;
-        for (int cnt : rankCounts.values()) {
+        for (int r = 0; r < 13; r++) {
+            int cnt = Long.bitCount((open >>> (r * 4)) & 0xFL);
+            if (cnt == 0) {
+                continue;
+            }
+            ranks |= 1 << r;
             maxCount = Math.max(maxCount, cnt);
             if (cnt == 2) {
                 pairCount++;
@@ -739,14 +772,14 @@ public class SevenPokerGame {
             }
         }
         boolean flush = false;
-        for (int cnt : suitCounts.values()) {
-            if (cnt == openCards.size()) {
+        for (int suit = 0; suit < 4; suit++) {
+            if (Long.bitCount(open & (SUIT_BITS << suit)) == count) {
                 flush = true;
                 break;
             }
         }
         boolean straight = isStraight(ranks);
-        if (straight && flush && openCards.size() >= 3) {
+        if (straight && flush && count >= 3) {
             return 8;
         }
         if (maxCount >= 4) {
@@ -755,10 +788,10 @@ public class SevenPokerGame {
         if (tripleCount >= 1 && pairCount >= 1) {
             return 6;
         }
-        if (flush && openCards.size() >= 3) {
+        if (flush && count >= 3) {
             return 5;
         }
-        if (straight && openCards.size() >= 3) {
+        if (straight && count >= 3) {
             return 4;
         }
         if (tripleCount >= 1) {
@@ -815,27 +848,70 @@ public class SevenPokerGame {
         }
     }
 
-    private List<Card> openCards(Side side, int stage) {
-        List<Card> open = new ArrayList<>();
+    // card mask (bit = Card.index()) of the face-up cards visible at the given stage
+    private long openCards(Side side, int stage) {
         if (side.cards.size() <= 2) {
-            return open;
+            return 0L;
         }
-        if (stage <= 0) {
-            if (side.cards.size() > 2) {
-                open.add(side.cards.get(2));
+        int maxIndex = 2;
+        if (stage > 0) {
+            maxIndex = Math.min(2 + stage, side.cards.size() - 1);
+            if (stage >= 4) {
+                maxIndex = Math.min(5, side.cards.size() - 1);
             }
-            return open;
-        }
-        int maxIndex = Math.min(2 + stage, side.cards.size() - 1);
-        if (stage >= 4) {
-            maxIndex = Math.min(5, side.cards.size() - 1);
         }
+        long open = 0L;
         for (int i = 2; i <= maxIndex; i++) {
-            open.add(side.cards.get(i));
+            Card c = side.cards.get(i);
+            open |= 1L << c.index();
         }
         return open;
     }
 
+    // the spot only changes when cards are dealt or someone folds, so re-decisions on a street reuse it
+    private double aiEquity(Side side, StudEquity.Spot spot) {
+        long seen = spot.hero();
+        for (long open : spot.opponents()) {
+            seen |= open;
+        }
+        if (seen != side.aiEquitySeen || spot.dead() != side.aiEquityDead) {
+            long deals = StudExact.deals(spot);
+            side.aiEquity = deals >= 0 && deals <= aiEquityTrials
+                    ? StudExact.equity(spot).orElseThrow()
+                    : StudEquity.equity(spot, aiEquityTrials, new SplittableRandom(rng.nextLong()));
+            side.aiEquitySeen = seen;
+            side.aiEquityDead = spot.dead();
+        }
+        return side.aiEquity;
+    }
+
+    /**
+     * What {@code user} can see of the table: their own cards, the open cards of every live opponent and
+     * of folded players (dead). Null when the user is not in the hand.
+     */
+    public StudEquity.Spot equitySpot(State s, String user) {
+        Side hero = s.players.get(user);
+        if (hero == null || hero.folded || hero.cards.isEmpty()) {
+            return null;
+        }
+        long[] opponents = new long[s.players.size()];
+        int n = 0;
+        long dead = 0L;
+        for (Map.Entry<String, Side> entry : s.players.entrySet()) {
+            Side side = entry.getValue();
+            if (side == null || side == hero) {
+                continue;
+            }
+            long open = openCards(side, s.stage);
+            if (side.folded) {
+                dead |= open;
+            } else {
+                opponents[n++] = open;
+            }
+        }
+        return new StudEquity.Spot(SevenCardEval.mask(hero.cards), Arrays.copyOf(opponents, n), dead);
+    }
+
     private int neededToCall(State s, String user) {
         if (s.currentBet == 0) {
             return 0;
@@ -879,51 +955,56 @@ public class SevenPokerGame {
         return count;
     }
 
-    private HandScore bestFiveScore(List<Card> cards) {
+    long bestFiveScore(List<Card> cards) {
         if (cards.size() < 5) {
             throw new IllegalStateException("Need at least 5 cards for showdown");
         }
-        HandScore best = null;
-        int n = cards.size();
-        for (int a = 0; a < n - 4; a++) {
-            for (int b = a + 1; b < n - 3; b++) {
-                for (int c = b + 1; c < n - 2; c++) {
-                    for (int d = c + 1; d < n - 1; d++) {
-                        for (int e = d + 1; e < n; e++) {
-                            List<Card> hand = List.of(
-                                    cards.get(a),
-                                    cards.get(b),
-                                    cards.get(c),
-                                    cards.get(d),
-                                    cards.get(e));
-                            HandScore score = PokerEval.evaluate(hand);
-                            if (best == null || score.compareTo(best) > 0) {
-                                best = score;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return best;
+        return SevenCardEval.evaluatePacked(cards);
     }
 
-    private double evaluateStrength(List<Card> cards) {
-        if (cards.isEmpty()) {
+    double evaluateStrength(List<Card> cards) {
+        return cachedStrength(SevenCardEval.mask(cards));
+    }
+
+    private boolean hasDrawPotential(List<Card> cards) {
+        return cachedDrawPotential(SevenCardEval.mask(cards));
+    }
+
+    private static double cachedStrength(long cards) {
+        if (cards == 0L) {
             return 0.0;
         }
-        Map<Card.Rank, Integer> rankCounts = new EnumMap<>(Card.Rank.class);
-        Map<Card.Suit, Integer> suitCounts = new EnumMap<>(Card.Suit.class);
-        int highest = 0;
-        for (Card c : cards) {
-            rankCounts.merge(c.rank(), 1, Integer::sum);
-            suitCounts.merge(c.suit(), 1, Integer::sum);
-            highest = Math.max(highest, c.rank().ordinal());
+        LongFloatCache cache = AI_CACHE.get();
+        float v = cache.get(cards);
+        if (Float.isNaN(v)) {
+            v = (float) strength(cards);
+            cache.put(cards, v);
         }
+        return v;
+    }
+
+    private static boolean cachedDrawPotential(long cards) {
+        LongFloatCache cache = AI_CACHE.get();
+        float v = cache.get(cards | DRAW_KEY);
+        if (Float.isNaN(v)) {
+            v = drawPotential(cards) ? 1f : 0f;
+            cache.put(cards | DRAW_KEY, v);
+        }
+        return v != 0f;
+    }
+
+    // pairs/trips/quads, two pair, flush and straight bonuses on top of the high card
+    private static double strength(long cards) {
+        int ranks = 0;
         int pairs = 0;
         int trips = 0;
         int quads = 0;
-        for (int cnt : rankCounts.values()) {
+        for (int r = 0; r < 13; r++) {
+            int cnt = Long.bitCount((cards >>> (r * 4)) & 0xF);
+            if (cnt == 0) {
+                continue;
+            }
+            ranks |= 1 << r;
             if (cnt == 4) {
                 quads++;
             } else if (cnt == 3) {
@@ -932,6 +1013,7 @@ public class SevenPokerGame {
                 pairs++;
             }
         }
+        int highest = 31 - Integer.numberOfLeadingZeros(ranks);
         double strength = (highest / 12.0) * 0.3;
         strength += pairs * 0.2;
         strength += trips * 0.35;
@@ -939,126 +1021,56 @@ public class SevenPokerGame {
         if (pairs >= 2) {
             strength += 0.15;
         }
-        if (isFlush(suitCounts)) {
+        if (longestSuit(cards) >= 5) {
             strength += 0.4;
         }
-        if (isStraight(rankCounts)) {
+        if (longestRun(ranks) >= 5 || (ranks & 0x100F) == 0x100F) {
             strength += 0.35;
         }
         return Math.max(0.0, Math.min(1.0, strength));
     }
 
-    private boolean hasDrawPotential(List<Card> cards) {
-        if (cards.size() < 4) {
+    // four or more cards with all but one suited or in sequence (no ace-low)
+    private static boolean drawPotential(long cards) {
+        int n = Long.bitCount(cards);
+        if (n < 4) {
             return false;
         }
-        Map<Card.Suit, Integer> suitCounts = new EnumMap<>(Card.Suit.class);
-        Set<Integer> ranks = new HashSet<>();
-        for (Card c : cards) {
-            suitCounts.merge(c.suit(), 1, Integer::sum);
-            ranks.add(c.rank().ordinal());
+        if (longestSuit(cards) >= Math.max(3, n - 1)) {
+            return true;
         }
-        for (int cnt : suitCounts.values()) {
-            if (cnt >= Math.max(3, cards.size() - 1)) {
-                return true;
+        int ranks = 0;
+        for (int r = 0; r < 13; r++) {
+            if (((cards >>> (r * 4)) & 0xF) != 0) {
+                ranks |= 1 << r;
             }
         }
-        List<Integer> sorted = new ArrayList<>(ranks);
-        Collections.sort(sorted);
-        int run = 1;
-        for (int i = 1; i < sorted.size(); i++) {
-            if (sorted.get(i) == sorted.get(i - 1) + 1) {
-                run++;
-                if (run >= cards.size() - 1) {
-                    return true;
-                }
-            } else {
-                run = 1;
-            }
-        }
-        return false;
+        return longestRun(ranks) >= n - 1;
     }
 
-    private boolean isFlush(Map<Card.Suit, Integer> suitCounts) {
-        for (int cnt : suitCounts.values()) {
-            if (cnt >= 5) {
-                return true;
-            }
+    private static int longestSuit(long cards) {
+        int best = 0;
+        for (int suit = 0; suit < 4; suit++) {
+            best = Math.max(best, Long.bitCount(cards & (SUIT_BITS << suit)));
         }
-        return false;
+        return best;
     }
 
-    private boolean isStraight(Map<Card.Rank, Integer> rankCounts) {
-        if (rankCounts.size() < 5) {
-            return false;
-        }
-        List<Integer> vals = new ArrayList<>();
-        for (Card.Rank r : rankCounts.keySet()) {
-            vals.add(r.ordinal());
-        }
-        Collections.sort(vals);
-        int run = 1;
-        for (int i = 1; i < vals.size(); i++) {
-            if (vals.get(i) == vals.get(i - 1) + 1) {
-                run++;
-                if (run >= 5) {
-                    return true;
-                }
-            } else if (!Objects.equals(vals.get(i), vals.get(i - 1))) {
-                run = 1;
-            }
-        }
-        if (rankCounts.containsKey(Card.Rank.ACE)
-                && rankCounts.containsKey(Card.Rank.TWO)
-                && rankCounts.containsKey(Card.Rank.THREE)
-                && rankCounts.containsKey(Card.Rank.FOUR)
-                && rankCounts.containsKey(Card.Rank.FIVE)) {
-            return true;
+    private static int longestRun(int ranks) {
+        int run = 0;
+        while (ranks != 0) {
+            ranks &= ranks << 1;
+            run++;
         }
-        return false;
+        return run;
     }
 
-    private boolean isStraight(SortedSet<Integer> ranks) {
-        if (ranks.size() < 3) {
+    // three consecutive ranks (A-2-3 included) in a 13-bit rank set
+    private boolean isStraight(int ranks) {
+        if (Integer.bitCount(ranks) < 3) {
             return false;
         }
-        int run = 1;
-        Integer prev = null;
-        for (Integer v : ranks) {
-            if (prev != null) {
-                if (v == prev + 1) {
-                    run++;
-                    if (run >= 3) {
-                        return true;
-                    }
-                } else if (!v.equals(prev)) {
-                    run = 1;
-                }
-            }
-            prev = v;
-        }
-        if (ranks.contains(rankValue(Card.Rank.ACE)) && ranks.contains(rankValue(Card.Rank.TWO))
-                && ranks.contains(rankValue(Card.Rank.THREE))) {
-            return true;
-        }
-        return false;
-    }
-
-    private int cardKey(Card card) {
-        return rankValue(card.rank()) * 10 + suitValue(card.suit());
-    }
-
-    private int rankValue(Card.Rank rank) {
-        return rank.ordinal() + 2;
-    }
-
-    private int suitValue(Card.Suit suit) {
-        return switch (suit) {
-            case C -> 0;
-            case D -> 1;
-            case H -> 2;
-            case S -> 3;
-        };
+        return (ranks & (ranks >>> 1) & (ranks >>> 2)) != 0 || (ranks & 0x1003) == 0x1003;
     }
 
     public int minRaise(State s) {
@@ -0,0 +1,74 @@
+package com.cardgame.cardserver.core;
+import java.util.concurrent.*;
+/**
+ * Multi-deck shoe with a cut card. Once the cut card is reached the shoe is replaced between rounds
+ * (beginRound) by a second, already shuffled buffer; the spent buffer is reshuffled in the background
+ * so a round never pays for the shuffle inline.
+ */
+public class Shoe {
+    public static final double DEFAULT_PENETRATION = 0.75;
+    private static final ExecutorService PRESHUFFLE = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "shoe-preshuffle"); t.setDaemon(true); return t;
+    });
+
+    private final int decks;
+    private final int cutCard;              // 이 장수만큼 소모되면 다음 라운드 전에 교체
+    private final boolean preShuffle;
+    private Deck current;
+    private Deck spare;
+    private Future<?> spareReady;
+    private int shuffles;
+
+    public Shoe(int decks){ this(decks, DEFAULT_PENETRATION, true); }
+
+    public Shoe(int decks, double penetration, boolean preShuffle){
+        if(penetration <= 0.0 || penetration > 1.0) throw new IllegalArgumentException("penetration must be in (0,1]");
+        this.decks = Math.max(1, decks);
+        this.preShuffle = preShuffle;
+        this.current = new Deck(this.decks);
+        this.cutCard = Math.min(current.size(), (int)Math.round(current.size() * penetration));
+        if(preShuffle){ spare = new Deck(this.decks); spareReady = CompletableFuture.completedFuture(null); }
+    }
+
+    /** Call between rounds: swaps in a fresh shoe once the cut card has come out. */
+    public boolean beginRound(){
+        if(!cutCardReached()) return false;
+        reshuffle();
+        return true;
+    }
+
+    public boolean cutCardReached(){ return current.size() - current.left() >= cutCard; }
+
+    public Card draw(){ return Card.of(drawIndex()); }
+
+    public int drawIndex(){
+        if(current.left()==0) reshuffle();   // 라운드 도중 소진 시 즉시 교체
+        return current.drawIndex();
+    }
+
+    public int left(){ return current.left(); }
+    public int[] leftByRank(){ return current.leftByRank(); }
+    public int size(){ return current.size(); }
+    public int decks(){ return decks; }
+    public int cutCard(){ return cutCard; }
+    public int shuffles(){ return shuffles; }
+
+    private void reshuffle(){
+        shuffles++;
+        if(!preShuffle){ current.shuffle(); return; }
+        try{
+            spareReady.get();
+        }catch(InterruptedException e){
+            // 백그라운드 셔플이 아직 spare 를 섞는 중일 수 있으니 건드리지 않고 현재 덱을 제자리에서 섞는다
+            Thread.currentThread().interrupt();
+            current.shuffle();
+            return;
+        }catch(ExecutionException e){   // 작업은 끝났으니 spare 를 직접 섞어도 안전
+            spare.shuffle();
+        }
+        Deck spent = current;
+        current = spare;
+        spare = spent;
+        spareReady = PRESHUFFLE.submit(spent::shuffle);
+    }
+}
@@ -0,0 +1,191 @@
+package com.cardgame.cardserver.core.baccarat;
+
+import com.cardgame.cardserver.core.Card;
+
+/**
+ * Exact baccarat probabilities for a given remaining shoe, under the rules
+ * {@link com.cardgame.cardserver.core.BaccaratRoom} and {@link com.cardgame.cardserver.core.BaccaratGame}
+ * play: deal P, B, P, B; each side draws one more card on 0..5, the banker independently of the player's
+ * third card. Every win pays the table payouts (banker 0.95 with commission, tie 8:1, pairs 11:1, Super 6
+ * 12:1), so the report also gives the return per unit staked on each bet.
+ *
+ * <p>Outcomes only depend on pip values, so the deal is enumerated over the 10 value classes with
+ * exact without-replacement weights. The two player cards (and the two banker cards) are interchangeable,
+ * so only unordered pairs are visited: about 3k two-card combinations, each finished in at most ~30 steps
+ * with prefix sums over the banker's final total. Pair odds depend on ranks and not on order, so they come
+ * straight from the rank counts.
+ */
+public final class BaccaratOdds {
+
+    private static final int PIPS = 10;
+    private static final int RANKS = 13;
+    private static final int MIN_CARDS = 6;
+
+    private BaccaratOdds() {
+    }
+
+    public record Result(int cards, double player, double banker, double tie, double playerPair,
+                         double bankerPair, double super6, long nanos) {
+
+        /** Expected amount returned per unit bet (1.0 = fair), matching the settlement code. */
+        public double returnPlayer() {
+            return 2 * player + tie;
+        }
+
+        public double returnBanker(boolean commission) {
+            return (commission ? 1.95 : 2.0) * banker + tie;
+        }
+
+        public double returnTie() {
+            return 9 * tie;
+        }
+
+        public double returnPair() {
+            return 12 * playerPair;
+        }
+
+        public double returnSuper6() {
+            return 13 * super6;
+        }
+    }
+
+    /**
+     * Rank counts of the undealt cards, indexed by {@link Card.Rank} ordinal (see
+     * {@link com.cardgame.cardserver.core.Shoe#leftByRank()}).
+     */
+    public static Result compute(int[] byRank) {
+        long started = System.nanoTime();
+        if (byRank.length != RANKS) {
+            throw new IllegalArgumentException("expected " + RANKS + " rank counts");
+        }
+        int[] c = new int[PIPS];
+        int n = 0;
+        for (Card.Rank r : Card.Rank.values()) {
+            c[pip(r)] += byRank[r.ordinal()];
+            n += byRank[r.ordinal()];
+        }
+        if (n < MIN_CARDS) {
+            throw new IllegalArgumentException("need at least " + MIN_CARDS + " cards to finish a round");
+        }
+
+        double pair = 0.0;
+        for (int count : byRank) {
+            pair += (double) count * (count - 1);
+        }
+        pair /= (double) n * (n - 1);
+
+        double[] out = new double[4];   // player, banker, tie, super6
+        // player's two cards (unordered), then banker's two cards (unordered)
+        for (int p1 = 0; p1 < PIPS; p1++) {
+            if (c[p1] == 0) {
+                continue;
+            }
+            double w1 = (double) c[p1] / n;
+            c[p1]--;
+            for (int p2 = p1; p2 < PIPS; p2++) {
+                if (c[p2] == 0) {
+                    continue;
+                }
+                double w2 = w1 * c[p2] / (n - 1) * (p1 == p2 ? 1 : 2);
+                c[p2]--;
+                int player = (p1 + p2) % 10;
+                for (int b1 = 0; b1 < PIPS; b1++) {
+                    if (c[b1] == 0) {
+                        continue;
+                    }
+                    double w3 = w2 * c[b1] / (n - 2);
+                    c[b1]--;
+                    for (int b2 = b1; b2 < PIPS; b2++) {
+                        if (c[b2] == 0) {
+                            continue;
+                        }
+                        double w4 = w3 * c[b2] / (n - 3) * (b1 == b2 ? 1 : 2);
+                        c[b2]--;
+                        thirdCards(c, n - 4, player, (b1 + b2) % 10, w4, out);
+                        c[b2]++;
+                    }
+                    c[b1]++;
+                }
+                c[p2]++;
+            }
+            c[p1]++;
+        }
+        return new Result(n, out[0], out[1], out[2], pair, pair, out[3], System.nanoTime() - started);
+    }
+
+    // player draws first on 0..5, then the banker on 0..5 regardless of the player's card
+    private static void thirdCards(int[] c, int n, int player, int banker, double w, double[] out) {
+        if (player > 5) {
+            banker(c, n, player, banker, w, out);
+            return;
+        }
+        if (banker > 5) {
+            for (int p3 = 0; p3 < PIPS; p3++) {
+                if (c[p3] != 0) {
+                    outcome((player + p3) % 10, banker, w * c[p3] / n, out);
+                }
+            }
+            return;
+        }
+        // both draw: the banker's final total over all n cards, as counts and prefix counts; each player
+        // card then only removes itself from the banker's pool, so every p3 is O(1) instead of a 10-card loop
+        int[] finals = new int[PIPS];
+        for (int v = 0; v < PIPS; v++) {
+            finals[(banker + v) % 10] += c[v];
+        }
+        int[] below = new int[PIPS + 1];
+        for (int t = 0; t < PIPS; t++) {
+            below[t + 1] = below[t] + finals[t];
+        }
+        double rest = n - 1;
+        for (int p3 = 0; p3 < PIPS; p3++) {
+            if (c[p3] == 0) {
+                continue;
+            }
+            double wp = w * c[p3] / n / rest;
+            int pt = (player + p3) % 10;
+            int gone = (banker + p3) % 10;   // banker total the removed card would have made
+            int lower = below[pt] - (gone < pt ? 1 : 0);
+            int equal = finals[pt] - (gone == pt ? 1 : 0);
+            out[0] += wp * lower;
+            out[2] += wp * equal;
+            out[1] += wp * (n - 1 - lower - equal);
+            if (pt < 6) {
+                out[3] += wp * (finals[6] - (gone == 6 ? 1 : 0));
+            }
+        }
+    }
+
+    private static void banker(int[] c, int n, int player, int banker, double w, double[] out) {
+        if (banker > 5) {
+            outcome(player, banker, w, out);
+            return;
+        }
+        for (int b3 = 0; b3 < PIPS; b3++) {
+            if (c[b3] != 0) {
+                outcome(player, (banker + b3) % 10, w * c[b3] / n, out);
+            }
+        }
+    }
+
+    private static void outcome(int player, int banker, double w, double[] out) {
+        if (player > banker) {
+            out[0] += w;
+        } else if (banker > player) {
+            out[1] += w;
+            if (banker == 6) {
+                out[3] += w;
+            }
+        } else {
+            out[2] += w;
+        }
+    }
+
+    private static int pip(Card.Rank r) {
+        return switch (r) {
+            case ACE -> 1;
+            case TEN, JACK, QUEEN, KING -> 0;
+            default -> r.ordinal() + 2;
+        };
+    }
+}
@@ -0,0 +1,188 @@
+package com.cardgame.cardserver.core.baccarat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scoreboard roads for one shoe, updated once per round in O(1): the bead plate (every round, in order),
+ * the big road (one cell per non-tie round, ties counted on the latest cell) and the three derived roads
+ * (big eye boy, small road, cockroach pig). Derived roads only look back at the last few big road column
+ * lengths, so nothing is ever rescanned. Everything lives in fixed ring buffers of packed ints; a shoe
+ * longer than {@link #CAPACITY} rounds keeps its most recent rounds.
+ *
+ * <p>Cells carry the round that last touched them, so a reader can ask for everything changed since a
+ * round it already has ({@link #view(long)}). Big road rows are logical (a long streak keeps counting
+ * down); folding them into a dragon tail is left to the renderer. Not thread-safe: the owning room
+ * updates and reads it from its mailbox.
+ */
+public final class BaccaratRoads {
+
+    /** Rounds kept per shoe; an 8-deck shoe deals about 60-80. */
+    public static final int CAPACITY = 256;
+    public static final int PLAYER = 0;
+    public static final int BANKER = 1;
+    public static final int TIE = 2;
+
+    private static final int MASK = CAPACITY - 1;
+    private static final String[] WINNER = {"P", "B", "T"};
+    private static final String[] DERIVED = {"bigEye", "small", "cockroach"};
+    private static final int MAX_TIES = 0x7F;
+    // derived roads compare against at most 4 columns back
+    private static final int COLUMNS = 8;
+
+    private int shoe;
+    private long rounds;
+
+    // bead: winner | player total << 2 | banker total << 6 | player pair << 10 | banker pair << 11
+    private final int[] beads = new int[CAPACITY];
+
+    // big road cell: column | row << 16 | winner << 24 | ties << 25
+    private final int[] big = new int[CAPACITY];
+    private final long[] bigTouched = new long[CAPACITY];
+    private int bigCount;
+    private int leadingTies;
+    private final int[] columnLength = new int[COLUMNS];
+    private int column = -1;
+    private int row;
+    private int streak = -1;
+
+    // derived roads: 0 = red (repeat), 1 = blue (break)
+    private final byte[][] derived = new byte[3][CAPACITY];
+    private final long[][] derivedRound = new long[3][CAPACITY];
+    private final int[] derivedCount = new int[3];
+
+    public int shoe() {
+        return shoe;
+    }
+
+    public long rounds() {
+        return rounds;
+    }
+
+    /** Clears every road for a freshly shuffled shoe. */
+    public void newShoe() {
+        shoe++;
+        rounds = 0;
+        bigCount = 0;
+        leadingTies = 0;
+        column = -1;
+        row = 0;
+        streak = -1;
+        Arrays.fill(columnLength, 0);
+        Arrays.fill(derivedCount, 0);
+    }
+
+    public void record(int playerTotal, int bankerTotal, boolean playerPair, boolean bankerPair) {
+        int winner = playerTotal == bankerTotal ? TIE : playerTotal > bankerTotal ? PLAYER : BANKER;
+        long round = rounds++;
+        beads[(int) (round & MASK)] = winner | playerTotal << 2 | bankerTotal << 6
+                | (playerPair ? 1 << 10 : 0) | (bankerPair ? 1 << 11 : 0);
+
+        if (winner == TIE) {
+            if (bigCount == 0) {
+                leadingTies++;
+            } else {
+                int at = (bigCount - 1) & MASK;
+                int ties = Math.min(MAX_TIES, (big[at] >>> 25) + 1);
+                big[at] = (big[at] & 0x1FF_FFFF) | ties << 25;
+                bigTouched[at] = round;
+            }
+            return;
+        }
+        if (winner == streak) {
+            row++;
+        } else {
+            column++;
+            row = 0;
+            streak = winner;
+        }
+        columnLength[column & (COLUMNS - 1)] = row + 1;
+        int at = bigCount++ & MASK;
+        big[at] = (column & 0xFFFF) | row << 16 | winner << 24;
+        bigTouched[at] = round;
+
+        for (int k = 1; k <= 3; k++) {
+            int colour;
+            if (row == 0) {
+                if (column - 1 - k < 0) {
+                    continue;
+                }
+                colour = length(column - 1) == length(column - 1 - k) ? 0 : 1;
+            } else {
+                if (column - k < 0) {
+                    continue;
+                }
+                colour = length(column - k) == row ? 1 : 0;
+            }
+            int road = k - 1;
+            int slot = derivedCount[road]++ & MASK;
+            derived[road][slot] = (byte) colour;
+            derivedRound[road][slot] = round;
+        }
+    }
+
+    private int length(int col) {
+        return columnLength[col & (COLUMNS - 1)];
+    }
+
+    /**
+     * JSON-ready roads. With {@code from > 0} only beads of rounds {@code >= from}, big road cells touched
+     * since then and derived entries added since then are included, so a poller pays for new rounds only.
+     */
+    public Map<String, Object> view(long from) {
+        long first = Math.max(Math.max(0, from), rounds - CAPACITY);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("shoe", shoe);
+        out.put("rounds", rounds);
+        out.put("from", first);
+
+        List<Map<String, Object>> beadView = new ArrayList<>();
+        for (long r = first; r < rounds; r++) {
+            int b = beads[(int) (r & MASK)];
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("round", r);
+            m.put("w", WINNER[b & 3]);
+            m.put("p", (b >>> 2) & 0xF);
+            m.put("b", (b >>> 6) & 0xF);
+            m.put("pp", (b & 1 << 10) != 0);
+            m.put("bp", (b & 1 << 11) != 0);
+            beadView.add(m);
+        }
+        out.put("beads", beadView);
+
+        List<Map<String, Object>> bigView = new ArrayList<>();
+        for (int i = since(bigTouched, bigCount, first); i < bigCount; i++) {
+            int cell = big[i & MASK];
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("col", cell & 0xFFFF);
+            m.put("row", (cell >>> 16) & 0xFF);
+            m.put("w", WINNER[(cell >>> 24) & 1]);
+            m.put("ties", cell >>> 25);
+            bigView.add(m);
+        }
+        out.put("bigRoad", bigView);
+        out.put("leadingTies", leadingTies);
+
+        for (int road = 0; road < 3; road++) {
+            StringBuilder colours = new StringBuilder();
+            for (int i = since(derivedRound[road], derivedCount[road], first); i < derivedCount[road]; i++) {
+                colours.append(derived[road][i & MASK] == 0 ? 'R' : 'B');
+            }
+            out.put(DERIVED[road], colours.toString());
+        }
+        return out;
+    }
+
+    // touch rounds never decrease along a road, so walk back from the end only over what changed
+    private static int since(long[] touched, int count, long first) {
+        int i = count;
+        int oldest = Math.max(0, count - CAPACITY);
+        while (i > oldest && touched[(i - 1) & MASK] >= first) {
+            i--;
+        }
+        return i;
+    }
+}
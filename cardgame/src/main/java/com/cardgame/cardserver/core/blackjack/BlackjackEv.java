@@ -0,0 +1,296 @@
+package com.cardgame.cardserver.core.blackjack;
+
+import com.cardgame.cardserver.core.Card;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Composition-dependent blackjack EV under the rules {@link com.cardgame.cardserver.core.BlackjackGame}
+ * plays: dealer stands on all 17s and takes no peek, every win pays 1:1, double takes exactly one card,
+ * one split of equal-value cards, surrender any time for half the bet.
+ *
+ * <p>The shoe is a packed composition key (count per value A,2..9,T; 6 bits each, 8 bits for tens), so
+ * drawing a card is a subtraction. Dealer outcome distributions and the player's best hit/stand EV are
+ * memoized per composition key, which makes repeated queries during a shoe mostly lookups. Not
+ * thread-safe: use one engine per table.
+ */
+public final class BlackjackEv {
+
+    /** Dealer outcome buckets: final 17..21, bust, or under 17 (only if the shoe ran dry). */
+    public static final int D17 = 0;
+    public static final int BUST = 5;
+    public static final int UNDER = 6;
+
+    private static final int VALUES = 10;           // index 0 = ace, 1..8 = 2..9, 9 = ten-valued
+    private static final int TEN = 9;
+    private static final int[] SHIFT = {0, 6, 12, 18, 24, 30, 36, 42, 48, 54};
+    private static final int MEMO_LIMIT = 1 << 20;
+    private static final int STATES = 32 * 2;        // hard total (aces as 1) x holds an ace
+
+    private final Map<Long, double[][]> dealerMemo = new HashMap<>();
+    // per dealer up card: composition -> best EV of (hard, ace) hand; NaN = not computed
+    private final List<Map<Long, double[]>> playerMemo = new ArrayList<>(VALUES);
+
+    public BlackjackEv() {
+        for (int i = 0; i < VALUES; i++) {
+            playerMemo.add(new HashMap<>());
+        }
+    }
+
+    public static final class Result {
+        public final double stand;
+        public final double hit;
+        public final double dbl;
+        public final double split;       // NaN when the hand can't be split
+        public final double surrender;
+        public final double[] dealer;    // up card only, before the player acts
+
+        Result(double stand, double hit, double dbl, double split, double surrender, double[] dealer) {
+            this.stand = stand;
+            this.hit = hit;
+            this.dbl = dbl;
+            this.split = split;
+            this.surrender = surrender;
+            this.dealer = dealer;
+        }
+
+        public String best() {
+            String best = "stand";
+            double ev = stand;
+            if (hit > ev) {
+                best = "hit";
+                ev = hit;
+            }
+            if (dbl > ev) {
+                best = "double";
+                ev = dbl;
+            }
+            if (split > ev) {
+                best = "split";
+                ev = split;
+            }
+            if (surrender > ev) {
+                best = "surrender";
+            }
+            return best;
+        }
+    }
+
+    /**
+     * EV per unit bet of each action for {@code hand} against {@code up}. {@code unseenByRank} counts the
+     * cards the player can't see (shoe plus dealer hole card) by {@link Card.Rank} ordinal.
+     */
+    public Result evaluate(List<Card> hand, Card up, int[] unseenByRank, boolean canSplit) {
+        if (memoSize() > MEMO_LIMIT) {
+            clear();
+        }
+        long key = key(unseenByRank);
+        int n = size(key);
+        int u = value(up);
+        int hard = 0;
+        boolean ace = false;
+        for (Card c : hand) {
+            int v = value(c);
+            hard += v + 1;
+            ace |= v == 0;
+        }
+        double stand = hard > 21 ? -1.0 : standEv(key, n, best(hard, ace), u);
+        double hit = hitEv(key, n, hard, ace, u);
+        double dbl = 2 * doubleEv(key, n, hard, ace, u);
+        double split = Double.NaN;
+        if (canSplit && hand.size() == 2) {
+            int v = value(hand.get(0));
+            // each half drawn from the same composition: card removal between the two hands is ignored
+            split = 2 * oneCardHandEv(key, n, v, u);
+        }
+        double[] dealer = dealer(key, n, u + 1, u == 0);
+        return new Result(stand, hit, dbl, split, -0.5, dealer.clone());
+    }
+
+    /** Dealer final-total distribution for {@code up} (buckets {@link #D17}..{@link #UNDER}). */
+    public double[] dealerDistribution(Card up, int[] unseenByRank) {
+        long key = key(unseenByRank);
+        int u = value(up);
+        return dealer(key, size(key), u + 1, u == 0).clone();
+    }
+
+    public void clear() {
+        dealerMemo.clear();
+        for (Map<Long, double[]> m : playerMemo) {
+            m.clear();
+        }
+    }
+
+    private int memoSize() {
+        int size = dealerMemo.size();
+        for (Map<Long, double[]> m : playerMemo) {
+            size += m.size();
+        }
+        return size;
+    }
+
+    private double[] dealer(long key, int n, int hard, boolean ace) {
+        double[][] states = dealerMemo.computeIfAbsent(key, k -> new double[STATES][]);
+        int idx = state(hard, ace);
+        double[] dist = states[idx];
+        if (dist != null) {
+            return dist;
+        }
+        dist = new double[7];
+        int total = best(hard, ace);
+        if (hard > 21) {
+            dist[BUST] = 1.0;
+        } else if (total >= 17) {
+            dist[D17 + total - 17] = 1.0;
+        } else if (n == 0) {
+            dist[UNDER] = 1.0;
+        } else {
+            for (int v = 0; v < VALUES; v++) {
+                int c = count(key, v);
+                if (c == 0) {
+                    continue;
+                }
+                double p = (double) c / n;
+                double[] next = dealer(key - unit(v), n - 1, hard + v + 1, ace || v == 0);
+                for (int i = 0; i < dist.length; i++) {
+                    dist[i] += p * next[i];
+                }
+            }
+        }
+        states[idx] = dist;
+        return dist;
+    }
+
+    private double standEv(long key, int n, int total, int up) {
+        double[] d = dealer(key, n, up + 1, up == 0);
+        double ev = d[BUST] + d[UNDER] * (total > 16 ? 1 : total == 16 ? 0 : -1);
+        for (int t = 17; t <= 21; t++) {
+            double p = d[D17 + t - 17];
+            ev += total > t ? p : total < t ? -p : 0.0;
+        }
+        return ev;
+    }
+
+    // best of stand / hit from here on
+    private double playEv(long key, int n, int hard, boolean ace, int up) {
+        if (hard > 21) {
+            return -1.0;
+        }
+        double[] row = playerMemo.get(up).computeIfAbsent(key, k -> newRow());
+        int idx = state(hard, ace);
+        if (!Double.isNaN(row[idx])) {
+            return row[idx];
+        }
+        double ev = standEv(key, n, best(hard, ace), up);
+        if (best(hard, ace) < 21) {
+            ev = Math.max(ev, hitEv(key, n, hard, ace, up));
+        }
+        row[idx] = ev;
+        return ev;
+    }
+
+    private double hitEv(long key, int n, int hard, boolean ace, int up) {
+        if (hard > 21) {
+            return -1.0;
+        }
+        if (n == 0) {
+            return standEv(key, n, best(hard, ace), up);
+        }
+        double ev = 0.0;
+        for (int v = 0; v < VALUES; v++) {
+            int c = count(key, v);
+            if (c != 0) {
+                ev += (double) c / n * playEv(key - unit(v), n - 1, hard + v + 1, ace || v == 0, up);
+            }
+        }
+        return ev;
+    }
+
+    // one card, then stand (per unit of the original bet; the caller doubles it)
+    private double doubleEv(long key, int n, int hard, boolean ace, int up) {
+        if (hard > 21 || n == 0) {
+            return -1.0;
+        }
+        double ev = 0.0;
+        for (int v = 0; v < VALUES; v++) {
+            int c = count(key, v);
+            if (c == 0) {
+                continue;
+            }
+            int h = hard + v + 1;
+            ev += (double) c / n * (h > 21 ? -1.0 : standEv(key - unit(v), n - 1, best(h, ace || v == 0), up));
+        }
+        return ev;
+    }
+
+    // a split hand: the pair card plus one drawn card, then played with hit/stand
+    private double oneCardHandEv(long key, int n, int pair, int up) {
+        double ev = 0.0;
+        for (int v = 0; v < VALUES; v++) {
+            int c = count(key, v);
+            if (c != 0) {
+                ev += (double) c / n * playEv(key - unit(v), n - 1, pair + 1 + v + 1, pair == 0 || v == 0, up);
+            }
+        }
+        return ev;
+    }
+
+    private static double[] newRow() {
+        double[] row = new double[STATES];
+        Arrays.fill(row, Double.NaN);
+        return row;
+    }
+
+    private static int state(int hard, boolean ace) {
+        return Math.min(hard, 31) * 2 + (ace ? 1 : 0);
+    }
+
+    private static int best(int hard, boolean ace) {
+        return ace && hard + 10 <= 21 ? hard + 10 : hard;
+    }
+
+    /** A=0, 2..9 = 1..8, T/J/Q/K = 9. */
+    static int value(Card c) {
+        return value(c.rank());
+    }
+
+    private static int value(Card.Rank r) {
+        return r == Card.Rank.ACE ? 0 : Math.min(r.ordinal() + 1, TEN);
+    }
+
+    static long key(int[] byRank) {
+        int[] counts = new int[VALUES];
+        for (Card.Rank r : Card.Rank.values()) {
+            counts[value(r)] += byRank[r.ordinal()];
+        }
+        long key = 0L;
+        for (int v = 0; v < VALUES; v++) {
+            int max = v == TEN ? 0xFF : 0x3F;
+            if (counts[v] > max) {
+                throw new IllegalArgumentException("shoe too large for the EV engine");
+            }
+            key |= (long) counts[v] << SHIFT[v];
+        }
+        return key;
+    }
+
+    private static int count(long key, int v) {
+        return (int) (key >>> SHIFT[v]) & (v == TEN ? 0xFF : 0x3F);
+    }
+
+    private static int size(long key) {
+        int n = 0;
+        for (int v = 0; v < VALUES; v++) {
+            n += count(key, v);
+        }
+        return n;
+    }
+
+    private static long unit(int v) {
+        return 1L << SHIFT[v];
+    }
+}
@@ -46,12 +46,50 @@ public final class PokerEval {
             return Integer.compare(this.tieBreakers.length, other.tieBreakers.length);
         }
 
+        public long packed() {
+            long packed = (long) rank.ordinal() << CATEGORY_SHIFT;
+            for (int i = 0; i < tieBreakers.length && i < 5; i++) {
+                packed |= (long) (tieBreakers[i] & 0xFF) << (32 - 8 * i);
+            }
+            return packed;
+        }
+
+        public static HandScore unpack(long packed) {
+            HandRank rank = category(packed);
+            int[] keys = new int[TIE_BREAKER_COUNT[rank.ordinal()]];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = (int) (packed >>> (32 - 8 * i)) & 0xFF;
+            }
+            return new HandScore(rank, keys);
+        }
+
         @Override
         public String toString() {
             return rank.toString();
         }
     }
 
+    // packed score: category << 40 | up to five 8-bit tie-breakers, most significant first.
+    // Scores of the same category always carry the same number of tie-breakers, so Long.compare
+    // orders packed scores exactly like HandScore.compareTo.
+    private static final int CATEGORY_SHIFT = 40;
+    private static final int[] TIE_BREAKER_COUNT = {5, 5, 5, 4, 2, 5, 4, 4, 2};
+    private static final HandRank[] RANKS = HandRank.values();
+
+    static long pack(HandRank rank, int t0, int t1, int t2, int t3, int t4) {
+        return (long) rank.ordinal() << CATEGORY_SHIFT
+                | (long) t0 << 32 | (long) t1 << 24 | (long) t2 << 16 | (long) t3 << 8 | t4;
+    }
+
+    public static HandRank category(long packed) {
+        return RANKS[(int) (packed >>> CATEGORY_SHIFT)];
+    }
+
+    /** Best five of 5..7 cards as a packed score; compare results with {@link Long#compare}. */
+    public static long evaluatePacked(List<Card> cards) {
+        return SevenCardEval.evaluatePacked(cards);
+    }
+
     public static HandScore evaluate(List<Card> hand) {
         if (hand.size() != 5) {
             throw new IllegalArgumentException("need exactly 5 cards");
@@ -0,0 +1,203 @@
+package com.cardgame.cardserver.core.poker;
+
+import com.cardgame.cardserver.core.Card;
+import com.cardgame.cardserver.core.poker.PokerEval.HandRank;
+import com.cardgame.cardserver.core.poker.PokerEval.HandScore;
+
+import java.util.List;
+
+/**
+ * Best-of-N (5..7 cards) evaluator working on a 52-bit card mask (bit = {@link Card#index()}).
+ * Produces exactly the score that the best of {@link PokerEval#evaluate} over every 5-card subset would,
+ * including the suit tie-breakers, as a packed long (see {@link PokerEval.HandScore#packed()}).
+ */
+public final class SevenCardEval {
+
+    private static final int RANK_MASK = 0x1FFF;
+
+    // 13-bit rank set (bit i = rank value i + 2) -> highest straight rank value, 0 if none
+    private static final byte[] STRAIGHT_HIGH = new byte[1 << 13];
+
+    static {
+        for (int mask = 0; mask < STRAIGHT_HIGH.length; mask++) {
+            int high = 0;
+            for (int top = 12; top >= 4; top--) {
+                int run = 0x1F << (top - 4);
+                if ((mask & run) == run) {
+                    high = top + 2;
+                    break;
+                }
+            }
+            if (high == 0 && (mask & 0x100F) == 0x100F) {
+                high = 5;
+            }
+            STRAIGHT_HIGH[mask] = (byte) high;
+        }
+    }
+
+    private SevenCardEval() {
+    }
+
+    public static long mask(List<Card> cards) {
+        long mask = 0L;
+        for (int i = 0, n = cards.size(); i < n; i++) {
+            Card c = cards.get(i);
+            mask |= 1L << c.index();
+        }
+        return mask;
+    }
+
+    public static HandScore evaluate(List<Card> cards) {
+        return HandScore.unpack(evaluatePacked(cards));
+    }
+
+    public static HandScore evaluate(long cards) {
+        return HandScore.unpack(evaluatePacked(cards));
+    }
+
+    public static long evaluatePacked(List<Card> cards) {
+        if (cards.size() < 5 || cards.size() > 7) {
+            throw new IllegalArgumentException("need 5 to 7 cards");
+        }
+        return evaluatePacked(mask(cards));
+    }
+
+    public static long evaluatePacked(long cards) {
+        int union = 0;
+        int flushSuit = -1;
+        int flushRanks = 0;
+        for (int s = 0; s < 4; s++) {
+            int ranks = suitRanks(cards, s);
+            union |= ranks;
+            if (Integer.bitCount(ranks) >= 5) {
+                flushSuit = s;
+                flushRanks = ranks;
+            }
+        }
+
+        if (flushSuit >= 0) {
+            int sfHigh = STRAIGHT_HIGH[flushRanks];
+            if (sfHigh != 0) {
+                return score(HandRank.STRAIGHT_FLUSH, sfHigh, flushSuit);
+            }
+        }
+
+        int quad = -1;
+        int trip1 = -1;
+        int trip2 = -1;
+        int pair1 = -1;
+        int pair2 = -1;
+        for (int r = 12; r >= 0; r--) {
+            int cnt = Integer.bitCount(suits(cards, r));
+            if (cnt == 4) {
+                quad = r;
+            } else if (cnt == 3) {
+                if (trip1 < 0) {
+                    trip1 = r;
+                } else if (trip2 < 0) {
+                    trip2 = r;
+                }
+            } else if (cnt == 2) {
+                if (pair1 < 0) {
+                    pair1 = r;
+                } else if (pair2 < 0) {
+                    pair2 = r;
+                }
+            }
+        }
+
+        if (quad >= 0) {
+            int kicker = highestRank(union & ~(1 << quad));
+            return score(HandRank.FOUR_OF_A_KIND, quad + 2, topSuit(cards, quad), kicker + 2, topSuit(cards, kicker));
+        }
+        if (trip1 >= 0 && (trip2 >= 0 || pair1 >= 0)) {
+            int pair = Math.max(trip2, pair1);
+            return score(HandRank.FULL_HOUSE, trip1 + 2, topSuit(cards, trip1), pair + 2, topSuit(cards, pair));
+        }
+        if (flushSuit >= 0) {
+            int r1 = highestRank(flushRanks);
+            int r2 = highestRank(flushRanks &= ~(1 << r1));
+            int r3 = highestRank(flushRanks &= ~(1 << r2));
+            int r4 = highestRank(flushRanks &= ~(1 << r3));
+            int r5 = highestRank(flushRanks & ~(1 << r4));
+            return score(HandRank.FLUSH, key(r1, flushSuit), key(r2, flushSuit), key(r3, flushSuit),
+                    key(r4, flushSuit), key(r5, flushSuit));
+        }
+        int straightHigh = STRAIGHT_HIGH[union];
+        if (straightHigh != 0) {
+            int suit = topSuit(cards, straightHigh - 2);
+            if (straightHigh == 5) {
+                suit = Math.max(suit, topSuit(cards, 12));
+            }
+            return score(HandRank.STRAIGHT, straightHigh, suit);
+        }
+        if (trip1 >= 0) {
+            int rest = union & ~(1 << trip1);
+            int k1 = highestRank(rest);
+            int k2 = highestRank(rest & ~(1 << k1));
+            return score(HandRank.THREE_OF_A_KIND, trip1 + 2, topSuit(cards, trip1),
+                    key(k1, topSuit(cards, k1)), key(k2, topSuit(cards, k2)));
+        }
+        if (pair2 >= 0) {
+            int k = highestRank(union & ~(1 << pair1) & ~(1 << pair2));
+            return score(HandRank.TWO_PAIR, pair1 + 2, topSuit(cards, pair1), pair2 + 2, topSuit(cards, pair2),
+                    key(k, topSuit(cards, k)));
+        }
+        if (pair1 >= 0) {
+            int rest = union & ~(1 << pair1);
+            int k1 = highestRank(rest);
+            rest &= ~(1 << k1);
+            int k2 = highestRank(rest);
+            rest &= ~(1 << k2);
+            int k3 = highestRank(rest);
+            return score(HandRank.ONE_PAIR, pair1 + 2, topSuit(cards, pair1),
+                    key(k1, topSuit(cards, k1)), key(k2, topSuit(cards, k2)), key(k3, topSuit(cards, k3)));
+        }
+        int r1 = highestRank(union);
+        int r2 = highestRank(union &= ~(1 << r1));
+        int r3 = highestRank(union &= ~(1 << r2));
+        int r4 = highestRank(union &= ~(1 << r3));
+        int r5 = highestRank(union & ~(1 << r4));
+        return score(HandRank.HIGH_CARD, key(r1, topSuit(cards, r1)), key(r2, topSuit(cards, r2)),
+                key(r3, topSuit(cards, r3)), key(r4, topSuit(cards, r4)), key(r5, topSuit(cards, r5)));
+    }
+
+    private static long score(HandRank rank, int t0, int t1) {
+        return PokerEval.pack(rank, t0, t1, 0, 0, 0);
+    }
+
+    private static long score(HandRank rank, int t0, int t1, int t2, int t3) {
+        return PokerEval.pack(rank, t0, t1, t2, t3, 0);
+    }
+
+    private static long score(HandRank rank, int t0, int t1, int t2, int t3, int t4) {
+        return PokerEval.pack(rank, t0, t1, t2, t3, t4);
+    }
+
+    // 4-bit suit set held for a rank index
+    private static int suits(long cards, int rankIndex) {
+        return (int) (cards >>> (rankIndex * 4)) & 0xF;
+    }
+
+    private static int topSuit(long cards, int rankIndex) {
+        return 31 - Integer.numberOfLeadingZeros(suits(cards, rankIndex));
+    }
+
+    // 13-bit rank set held in one suit
+    private static int suitRanks(long cards, int suit) {
+        long bits = (cards >>> suit) & 0x1111111111111L;
+        bits = (bits | (bits >>> 3)) & 0x0303030303030303L;
+        bits = (bits | (bits >>> 6)) & 0x000F000F000F000FL;
+        bits = (bits | (bits >>> 12)) & 0x000000FF000000FFL;
+        bits = bits | (bits >>> 24);
+        return (int) bits & RANK_MASK;
+    }
+
+    private static int highestRank(int ranks) {
+        return 31 - Integer.numberOfLeadingZeros(ranks);
+    }
+
+    private static int key(int rankIndex, int suit) {
+        return (rankIndex + 2) * 10 + suit;
+    }
+}
@@ -0,0 +1,139 @@
+package com.cardgame.cardserver.core.poker;
+
+import com.cardgame.cardserver.core.Card;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Seven Card Stud equity by Monte Carlo: from one player's own cards and the open cards of every live
+ * opponent, deal the rest of the hand at random many times and count the share of pots won (ties split).
+ * Rollouts run on the common {@link ForkJoinPool}, each leaf with its own {@link SplittableRandom}, and
+ * score hands with the mask evaluator, so the inner loop allocates nothing. A run of at most one leaf
+ * ({@value #LEAF_TRIALS} trials) stays on the calling thread.
+ */
+public final class StudEquity {
+
+    /** ~0.5% standard-error bound at 95% confidence: 1.96 * sqrt(0.25 / n) <= 0.005. */
+    public static final int DEFAULT_TRIALS = 40_000;
+
+    private static final int HAND = 7;
+    private static final int LEAF_TRIALS = 2_500;
+
+    /**
+     * What one player can see: their own cards, each live opponent's open cards, and cards known to be
+     * out of play (folded players' open cards). Opponents' hidden cards are dealt from the unseen cards.
+     */
+    public record Spot(long hero, long[] opponents, long dead) {
+    }
+
+    private StudEquity() {
+    }
+
+    public static double equity(Spot spot) {
+        return equity(spot, DEFAULT_TRIALS);
+    }
+
+    public static double equity(Spot spot, int trials) {
+        return equity(spot, trials, new SplittableRandom());
+    }
+
+    /** Same trials from the same {@code random} give the same result, however the work is split. */
+    public static double equity(Spot spot, int trials, SplittableRandom random) {
+        if (spot.opponents().length == 0) {
+            return 1.0;
+        }
+        long seen = spot.hero() | spot.dead();
+        int[] need = new int[spot.opponents().length + 1];
+        need[0] = HAND - Long.bitCount(spot.hero());
+        int total = need[0];
+        for (int i = 0; i < spot.opponents().length; i++) {
+            seen |= spot.opponents()[i];
+            need[i + 1] = HAND - Long.bitCount(spot.opponents()[i]);
+            total += need[i + 1];
+        }
+        int[] unseen = new int[Card.COUNT - Long.bitCount(seen)];
+        for (int c = 0, n = 0; c < Card.COUNT; c++) {
+            if ((seen & (1L << c)) == 0) {
+                unseen[n++] = c;
+            }
+        }
+        if (total > unseen.length) {
+            throw new IllegalArgumentException("not enough unseen cards to finish the hand");
+        }
+        int n = Math.max(1, trials);
+        Rollout root = new Rollout(spot, need, unseen, n, random);
+        return (n <= LEAF_TRIALS ? root.compute() : ForkJoinPool.commonPool().invoke(root)) / n;
+    }
+
+    private static final class Rollout extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spot spot;
+        private final int[] need;
+        private final int[] unseen;
+        private final int trials;
+        private final SplittableRandom random;
+
+        Rollout(Spot spot, int[] need, int[] unseen, int trials, SplittableRandom random) {
+            this.spot = spot;
+            this.need = need;
+            this.unseen = unseen;
+            this.trials = trials;
+            this.random = random;
+        }
+
+        @Override
+        protected Double compute() {
+            if (trials <= LEAF_TRIALS) {
+                return rollouts();
+            }
+            int half = trials / 2;
+            Rollout left = new Rollout(spot, need, unseen, half, random.split());
+            left.fork();
+            double right = new Rollout(spot, need, unseen, trials - half, random).compute();
+            return right + left.join();
+        }
+
+        private double rollouts() {
+            int[] deck = unseen.clone();
+            long[] opponents = spot.opponents();
+            double won = 0.0;
+            for (int t = 0; t < trials; t++) {
+                int top = deck.length;
+                long hero = spot.hero();
+                for (int k = need[0]; k > 0; k--) {
+                    int j = random.nextInt(top--);
+                    int card = deck[j];
+                    deck[j] = deck[top];
+                    deck[top] = card;
+                    hero |= 1L << card;
+                }
+                long heroScore = SevenCardEval.evaluatePacked(hero);
+                int tied = 1;
+                boolean lost = false;
+                for (int o = 0; o < opponents.length && !lost; o++) {
+                    long hand = opponents[o];
+                    for (int k = need[o + 1]; k > 0; k--) {
+                        int j = random.nextInt(top--);
+                        int card = deck[j];
+                        deck[j] = deck[top];
+                        deck[top] = card;
+                        hand |= 1L << card;
+                    }
+                    long score = SevenCardEval.evaluatePacked(hand);
+                    if (score > heroScore) {
+                        lost = true;
+                    } else if (score == heroScore) {
+                        tied++;
+                    }
+                }
+                if (!lost) {
+                    won += 1.0 / tied;
+                }
+            }
+            return won;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.cardgame.cardserver.core.poker;
+
+import com.cardgame.cardserver.core.Card;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * Exact Seven Card Stud equity for late streets: enumerates every way to deal the unseen cards to the
+ * players still missing some, instead of sampling like {@link StudEquity}. Only attempted when the number
+ * of deals is at most {@link #MAX_DEALS} (heads-up 6th/7th street, or 7th street with few unseen cards);
+ * otherwise returns empty so the caller can fall back to Monte Carlo. Results are memoized per spot, keyed
+ * by the seen-card masks, so repeated queries within a hand are a map lookup.
+ */
+public final class StudExact {
+
+    public static final long MAX_DEALS = 1_000_000L;
+
+    private static final int HAND = 7;
+    private static final int MEMO_SIZE = 4_096;
+
+    private static final Map<Key, Double> MEMO = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+            return size() > MEMO_SIZE;
+        }
+    };
+
+    private StudExact() {
+    }
+
+    public static OptionalDouble equity(StudEquity.Spot spot) {
+        if (spot.opponents().length == 0) {
+            return OptionalDouble.of(1.0);
+        }
+        Key key = new Key(spot);
+        synchronized (MEMO) {
+            Double hit = MEMO.get(key);
+            if (hit != null) {
+                return OptionalDouble.of(hit);
+            }
+        }
+        Enumeration run = Enumeration.of(spot);
+        if (run == null) {
+            return OptionalDouble.empty();
+        }
+        double equity = run.solve();
+        synchronized (MEMO) {
+            MEMO.put(key, equity);
+        }
+        return OptionalDouble.of(equity);
+    }
+
+    /** Number of deals needed to finish the spot, or -1 if it exceeds {@link #MAX_DEALS}. */
+    public static long deals(StudEquity.Spot spot) {
+        Enumeration run = Enumeration.of(spot);
+        return run == null ? -1 : run.deals;
+    }
+
+    private static final class Enumeration {
+        final long[] hands;
+        final int[] need;
+        final int[] unseen;
+        final long deals;
+        double won;
+
+        private Enumeration(long[] hands, int[] need, int[] unseen, long deals) {
+            this.hands = hands;
+            this.need = need;
+            this.unseen = unseen;
+            this.deals = deals;
+        }
+
+        // seat 0 is the hero
+        static Enumeration of(StudEquity.Spot spot) {
+            int seats = spot.opponents().length + 1;
+            long[] hands = new long[seats];
+            int[] need = new int[seats];
+            long seen = spot.dead();
+            hands[0] = spot.hero();
+            for (int i = 1; i < seats; i++) {
+                hands[i] = spot.opponents()[i - 1];
+            }
+            for (int i = 0; i < seats; i++) {
+                seen |= hands[i];
+                need[i] = HAND - Long.bitCount(hands[i]);
+            }
+            int left = Card.COUNT - Long.bitCount(seen);
+            long deals = 1;
+            for (int i = 0; i < seats; i++) {
+                deals *= choose(left, need[i]);
+                left -= need[i];
+                if (left < 0 || deals > MAX_DEALS) {
+                    return null;
+                }
+            }
+            int[] unseen = new int[Card.COUNT - Long.bitCount(seen)];
+            for (int c = 0, n = 0; c < Card.COUNT; c++) {
+                if ((seen & (1L << c)) == 0) {
+                    unseen[n++] = c;
+                }
+            }
+            return new Enumeration(hands, need, unseen, deals);
+        }
+
+        double solve() {
+            seat(0, 0L, 0L, 1);
+            return won / deals;
+        }
+
+        // deals need[seat] cards to this seat, then recurses; a seat that beats the hero ends the branch
+        private void seat(int seat, long used, long heroScore, int tied) {
+            if (seat == hands.length) {
+                won += 1.0 / tied;
+                return;
+            }
+            pick(seat, need[seat], 0, hands[seat], used, heroScore, tied);
+        }
+
+        private void pick(int seat, int k, int from, long hand, long used, long heroScore, int tied) {
+            if (k == 0) {
+                long score = SevenCardEval.evaluatePacked(hand);
+                if (seat == 0) {
+                    seat(1, used, score, 1);
+                } else if (score < heroScore) {
+                    seat(seat + 1, used, heroScore, tied);
+                } else if (score == heroScore) {
+                    seat(seat + 1, used, heroScore, tied + 1);
+                }
+                return;
+            }
+            for (int i = from; i <= unseen.length - k; i++) {
+                long bit = 1L << unseen[i];
+                if ((used & bit) == 0) {
+                    pick(seat, k - 1, i + 1, hand | bit, used | bit, heroScore, tied);
+                }
+            }
+        }
+    }
+
+    private static long choose(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        long r = 1;
+        for (int i = 1; i <= k; i++) {
+            r = r * (n - k + i) / i;
+        }
+        return r;
+    }
+
+    // opponents are interchangeable, so their masks are sorted before hashing
+    private static final class Key {
+        private final long hero;
+        private final long dead;
+        private final long[] opponents;
+
+        Key(StudEquity.Spot spot) {
+            this.hero = spot.hero();
+            this.dead = spot.dead();
+            this.opponents = spot.opponents().clone();
+            Arrays.sort(this.opponents);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && k.hero == hero && k.dead == dead && Arrays.equals(k.opponents, opponents);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hero) * 31 + Long.hashCode(dead) * 17 + Arrays.hashCode(opponents);
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package com.cardgame.cardserver.core.wallet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log of wallet balance deltas. Every change is appended to a memory-mapped segment file
+ * ({@code wal-<id>.log}) as {@code length | crc32c | delta | user}, padded to 8 bytes. Writers reserve
+ * their slot with one atomic add and copy the record into the mapping, so an append is a memory write
+ * and never a syscall. A flusher thread forces the written range to disk every {@code flushMillis} or
+ * as soon as {@code flushRecords} records are pending. That is group commit without making callers
+ * wait: a power loss can cost at most the last flush interval. A process crash keeps every complete
+ * record, because the page cache survives it; only appends caught mid-write are lost, and their
+ * callers never got an answer. Such an append leaves either a torn record (skipped by its length) or
+ * a reserved slot that is still all zeros. Replay steps over zero runs of up to {@link #MAX_GAP} bytes,
+ * so records reserved after the hole are still recovered.
+ *
+ * <p>Deltas commute, so records don't have to reach the log in the order their updates hit memory.
+ * A set is logged as the delta from the value it replaced. Appends hold the read side of a
+ * {@link StampedLock}; the flusher takes the write side only for a moment, to read a write position
+ * below which every record is complete, or to cut a snapshot ({@code snapshot-<id>.bin}, all balances
+ * covering every segment before {@code id}). Once a snapshot is durable, the files that only older
+ * snapshots needed are deleted; the previous snapshot and its segments stay until the next one is
+ * durable. Recovery reads the newest readable snapshot and the few segments after it.
+ */
+public final class WalletLog implements AutoCloseable {
+
+    /** Tunables; {@link #defaults(Path)} suits a single game server. */
+    public record Options(Path dir, int segmentBytes, long flushMillis, int flushRecords, long snapshotMillis) {
+        public Options {
+            if (segmentBytes < 4096 || flushMillis <= 0 || flushRecords <= 0 || snapshotMillis <= 0) {
+                throw new IllegalArgumentException("bad wallet log options");
+            }
+        }
+    }
+
+    public static Options defaults(Path dir) {
+        return new Options(dir, 64 << 20, 5, 4096, 60_000);
+    }
+
+    private static final int HEADER = 8;           // length + crc
+    private static final int ALIGN = 8;
+    /** Longest user name a record holds, in UTF-8 bytes. */
+    public static final int MAX_NAME = 4096;
+    // zero run replay will step over looking for records past unwritten slots: room for hundreds of
+    // appends caught in flight at once; anything longer is the end of the log
+    private static final int MAX_GAP = 1 << 20;
+    private static final int SNAPSHOT_MAGIC = 0x57414C31;   // "WAL1"
+
+    private final Options options;
+    private final Map<String, AtomicLong> cells;
+    private final StampedLock lock = new StampedLock();
+    private final Queue<Segment> sealed = new ConcurrentLinkedQueue<>();
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final Thread flusher;
+    private volatile Segment active;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private long replayed;
+    private long replayNanos;
+    private long snapshotAppended;
+    private long lastSnapshot;
+    private long kept;
+
+    private WalletLog(Options options, Map<String, AtomicLong> cells) {
+        this.options = options;
+        this.cells = cells;
+        this.flusher = new Thread(this::flushLoop, "wallet-log-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Recovers the balances in {@code options.dir()} into {@code cells} (users the log has never seen
+     * start at {@code initialBalance}), compacts them into a fresh snapshot and starts logging.
+     */
+    public static WalletLog open(Options options, Map<String, AtomicLong> cells, long initialBalance) {
+        try {
+            Files.createDirectories(options.dir());
+            WalletLog log = new WalletLog(options, cells);
+            long started = System.nanoTime();
+            Recovery recovery = recover(options.dir(), initialBalance);
+            recovery.balances.forEach((user, balance) -> cells.put(user, new AtomicLong(balance)));
+            log.replayed = recovery.records;
+            log.replayNanos = System.nanoTime() - started;
+            log.kept = recovery.covered;
+            log.active = log.newSegment(recovery.nextSegment);
+            log.snapshot();
+            log.flusher.start();
+            return log;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open wallet log in " + options.dir(), e);
+        }
+    }
+
+    /** Balances stored in {@code dir}, as {@link #open} would recover them; for audits and tests. */
+    public static Map<String, Long> read(Path dir, long initialBalance) {
+        try {
+            return recover(dir, initialBalance).balances;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Adds {@code delta} to {@code cell} and logs it; returns the new balance. */
+    public long add(String user, AtomicLong cell, long delta) {
+        return update(user, cell, delta, false);
+    }
+
+    /** Sets {@code cell} to {@code value}, logging the difference; returns {@code value}. */
+    public long set(String user, AtomicLong cell, long value) {
+        return update(user, cell, value, true);
+    }
+
+    private long update(String user, AtomicLong cell, long operand, boolean absolute) {
+        byte[] name = user.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME) {
+            throw new IllegalArgumentException("user name longer than " + MAX_NAME + " bytes");
+        }
+        int size = slot(8 + name.length);
+        while (true) {
+            long stamp = lock.readLock();
+            Segment segment = active;
+            try {
+                if (closed) {
+                    return absolute ? set(cell, operand) : cell.addAndGet(operand);
+                }
+                int at = segment.reserve(size);
+                if (at >= 0) {
+                    long result;
+                    long delta;
+                    if (absolute) {
+                        delta = operand - cell.getAndSet(operand);
+                        result = operand;
+                    } else {
+                        delta = operand;
+                        result = cell.addAndGet(operand);
+                    }
+                    segment.write(at, delta, name);
+                    if (appended.incrementAndGet() % options.flushRecords() == 0) {
+                        LockSupport.unpark(flusher);
+                    }
+                    return result;
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            roll(segment);
+        }
+    }
+
+    private static long set(AtomicLong cell, long value) {
+        cell.set(value);
+        return value;
+    }
+
+    // the writer that overflows the segment seals it; everyone else retries on the new one
+    private void roll(Segment full) {
+        long stamp = lock.writeLock();
+        try {
+            if (active == full && !closed) {
+                sealed.add(full);
+                active = newSegment(full.id + 1);
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("cannot roll wallet log segment", e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Records appended since open, fsyncs, snapshots, and what recovery replayed. */
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("appended", appended.get());
+        out.put("syncs", syncs.get());
+        out.put("snapshots", snapshots.get());
+        out.put("segment", active.id);
+        out.put("replayedRecords", replayed);
+        out.put("replayMillis", replayNanos / 1_000_000.0);
+        out.put("failure", failure == null ? null : failure.toString());
+        return out;
+    }
+
+    /** Stops the flusher, forces everything and leaves a snapshot so the next start replays nothing. */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+            long stamp = lock.writeLock();
+            lock.unlockWrite(stamp);   // in-flight appends are done
+            flush();
+            snapshot();
+            active.channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot close wallet log", e);
+        }
+    }
+
+    private void flushLoop() {
+        long flushNanos = options.flushMillis() * 1_000_000L;
+        while (!closed) {
+            LockSupport.parkNanos(this, flushNanos);
+            try {
+                flush();
+                if (System.currentTimeMillis() - lastSnapshot >= options.snapshotMillis()
+                        && appended.get() != snapshotAppended) {
+                    snapshot();
+                }
+            } catch (IOException e) {
+                failure = e;   // keep logging into memory; stats() reports it
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        for (Segment s; (s = sealed.poll()) != null; ) {
+            s.force(s.capacity);
+            s.channel.close();
+        }
+        // with the write lock held no append is half done, so everything below end is complete
+        long stamp = lock.writeLock();
+        Segment segment = active;
+        int end = segment.end();
+        lock.unlockWrite(stamp);
+        if (segment.force(end)) {
+            syncs.incrementAndGet();
+        }
+    }
+
+    private void snapshot() throws IOException {
+        Map<String, Long> balances;
+        long covered;
+        long stamp = lock.writeLock();
+        try {
+            balances = new HashMap<>(cells.size() * 2);
+            cells.forEach((user, cell) -> balances.put(user, cell.get()));
+            snapshotAppended = appended.get();
+            if (!closed) {
+                sealed.add(active);
+                active = newSegment(active.id + 1);
+            }
+            covered = closed ? active.id + 1 : active.id;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        lastSnapshot = System.currentTimeMillis();
+
+        Path dir = options.dir();
+        Path tmp = dir.resolve("snapshot.tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(encode(balances, covered));
+            out.force(true);
+        }
+        Files.move(tmp, dir.resolve(String.format("snapshot-%016d.bin", covered)),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // the rename is only durable once the directory entry is
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        }
+        snapshots.incrementAndGet();
+
+        // the snapshot is durable: keep the previous one as a fallback, drop what only older ones need
+        dropSealed(covered);
+        for (Path p : list(dir)) {
+            long id = fileId(p);
+            boolean oldSegment = p.getFileName().toString().startsWith("wal-") && id < kept;
+            boolean oldSnapshot = p.getFileName().toString().startsWith("snapshot-") && id < kept;
+            if (oldSegment || oldSnapshot) {
+                Files.deleteIfExists(p);
+            }
+        }
+        kept = covered;
+    }
+
+    // segments sealed after the snapshot was cut still need their force from flush()
+    private void dropSealed(long covered) throws IOException {
+        for (Segment s : sealed) {
+            if (s.id < covered && sealed.remove(s)) {
+                s.channel.close();
+            }
+        }
+    }
+
+    private Segment newSegment(long id) throws IOException {
+        Path path = options.dir().resolve(String.format("wal-%016d.log", id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, options.segmentBytes());
+        return new Segment(id, channel, buffer);
+    }
+
+    private static final class Segment {
+        final long id;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final AtomicLong reserved = new AtomicLong();
+        int forced;   // flusher only
+
+        Segment(long id, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        /** Start offset of {@code size} bytes, or -1 when the segment is full. */
+        int reserve(int size) {
+            long at = reserved.getAndAdd(size);
+            return at + size <= capacity ? (int) at : -1;
+        }
+
+        int end() {
+            return (int) Math.min(reserved.get(), capacity);
+        }
+
+        // length first: a record torn by a crash still says how far to skip, and its crc won't match
+        void write(int at, long delta, byte[] name) {
+            int length = 8 + name.length;
+            buffer.putInt(at, length);
+            buffer.putLong(at + HEADER, delta);
+            buffer.put(at + HEADER + 8, name);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(at + HEADER, length));
+            buffer.putInt(at + 4, (int) crc.getValue());
+        }
+
+        boolean force(int end) {
+            if (end <= forced) {
+                return false;
+            }
+            buffer.force(forced, end - forced);
+            forced = end;
+            return true;
+        }
+    }
+
+    private record Recovery(Map<String, Long> balances, long covered, long records, long nextSegment) {
+    }
+
+    private static Recovery recover(Path dir, long initialBalance) throws IOException {
+        List<Path> files = Files.isDirectory(dir) ? list(dir) : List.of();
+        Map<String, Long> balances = new HashMap<>();
+        long covered = -1;
+        boolean anySnapshot = false;
+        for (int i = files.size() - 1; i >= 0 && covered < 0; i--) {
+            Path p = files.get(i);
+            if (p.getFileName().toString().startsWith("snapshot-")) {
+                anySnapshot = true;
+                Map<String, Long> decoded = decode(ByteBuffer.wrap(Files.readAllBytes(p)));
+                if (decoded != null) {
+                    balances = decoded;
+                    covered = fileId(p);
+                }
+            }
+        }
+        if (covered < 0) {
+            if (anySnapshot) {
+                // the segments the snapshots covered are gone; starting from zero would mint money
+                throw new IOException("no readable wallet snapshot in " + dir);
+            }
+            covered = 0;
+        }
+        long records = 0;
+        long next = covered;
+        Map<Name, long[]> sums = new HashMap<>();
+        for (Path p : files) {
+            long id = fileId(p);
+            if (!p.getFileName().toString().startsWith("wal-") || id < covered) {
+                continue;
+            }
+            next = Math.max(next, id + 1);
+            try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+                records += replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), sums);
+            }
+        }
+        for (Map.Entry<Name, long[]> e : sums.entrySet()) {
+            long delta = e.getValue()[0];
+            balances.merge(e.getKey().toString(), initialBalance + delta, (old, ignored) -> old + delta);
+        }
+        return new Recovery(balances, covered, records, next);
+    }
+
+    // sums deltas per raw user name, so a name is decoded once per user rather than once per record
+    private static long replay(ByteBuffer segment, Map<Name, long[]> sums) {
+        long records = 0;
+        int at = 0;
+        CRC32C crc = new CRC32C();
+        ByteBuffer view = segment.duplicate();
+        Name probe = new Name();
+        while (at + HEADER <= segment.limit()) {
+            int length = segment.getInt(at);
+            if (length == 0) {
+                // a slot reserved by an append that never wrote (crash mid-append), or the end of the log
+                at = nextRecord(segment, at);
+                if (at < 0) {
+                    break;
+                }
+                continue;
+            }
+            if (length < 8 || length > 8 + MAX_NAME || at + HEADER + length > segment.limit()) {
+                break;   // torn tail
+            }
+            crc.reset();
+            view.limit(at + HEADER + length).position(at + HEADER);
+            crc.update(view);
+            if ((int) crc.getValue() == segment.getInt(at + 4)) {
+                long delta = segment.getLong(at + HEADER);
+                probe.read(segment, at + HEADER + 8, length - 8);
+                long[] sum = sums.get(probe);
+                if (sum == null) {
+                    sums.put(probe.copy(), sum = new long[1]);
+                }
+                sum[0] += delta;
+                records++;
+            }
+            at += slot(length);
+        }
+        return records;
+    }
+
+    // records start on ALIGN boundaries and unwritten slots are all zeros, so the first non-zero
+    // length word past a hole is the next record; -1 when the zeros run on past MAX_GAP or the end
+    private static int nextRecord(ByteBuffer segment, int hole) {
+        int end = (int) Math.min(segment.limit() - (long) HEADER, (long) hole + MAX_GAP);
+        for (int at = hole + ALIGN; at <= end; at += ALIGN) {
+            if (segment.getInt(at) != 0) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    // bytes a record with this payload length takes in the segment
+    private static int slot(int length) {
+        return (HEADER + length + ALIGN - 1) & -ALIGN;
+    }
+
+    /** UTF-8 user name as a map key; the replay probe is reused for every record. */
+    private static final class Name {
+        byte[] bytes = new byte[64];
+        int length;
+        int hash;
+
+        void read(ByteBuffer from, int at, int length) {
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            from.get(at, bytes, 0, length);
+            this.length = length;
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            hash = h;
+        }
+
+        Name copy() {
+            Name n = new Name();
+            n.bytes = Arrays.copyOf(bytes, length);
+            n.length = length;
+            n.hash = hash;
+            return n;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Name n && Arrays.equals(bytes, 0, length, n.bytes, 0, n.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    // magic | covered segment | count | (name length | name | balance)* | crc32c of everything before
+    private static ByteBuffer encode(Map<String, Long> balances, long covered) {
+        List<byte[]> names = new ArrayList<>(balances.size());
+        int size = 4 + 8 + 4 + 4;
+        for (String user : balances.keySet()) {
+            byte[] name = user.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            size += 4 + name.length + 8;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(SNAPSHOT_MAGIC).putLong(covered).putInt(balances.size());
+        int i = 0;
+        for (long balance : balances.values()) {
+            byte[] name = names.get(i++);
+            out.putInt(name.length).put(name).putLong(balance);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+        return out.flip();
+    }
+
+    private static Map<String, Long> decode(ByteBuffer in) {
+        if (in.remaining() < 20 || in.getInt(0) != SNAPSHOT_MAGIC) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(in.array(), 0, in.limit() - 4);
+        if ((int) crc.getValue() != in.getInt(in.limit() - 4)) {
+            return null;
+        }
+        in.position(12);
+        int count = in.getInt();
+        Map<String, Long> balances = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            balances.put(new String(name, StandardCharsets.UTF_8), in.getLong());
+        }
+        return balances;
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> fileId(p) >= 0).sorted().toList();
+        }
+    }
+
+    // id from wal-<id>.log / snapshot-<id>.bin, -1 for anything else
+    private static long fileId(Path p) {
+        String name = p.getFileName().toString();
+        int dash = name.indexOf('-');
+        int dot = name.lastIndexOf('.');
+        if (dash < 0 || dot <= dash) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(dash + 1, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
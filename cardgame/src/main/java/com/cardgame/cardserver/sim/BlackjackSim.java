@@ -0,0 +1,343 @@
+package com.cardgame.cardserver.sim;
+
+import com.cardgame.cardserver.core.Card;
+import com.cardgame.cardserver.core.Shoe;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * House-edge check for {@link com.cardgame.cardserver.core.BlackjackGame}: plays the same rules (dealer
+ * stands on all 17s and draws even when every hand busted, no peek, every win pays 1:1, one split with
+ * one card dealt to each half, double for one card, surrender for half the bet) with a fixed basic
+ * strategy, on primitive arrays only. Totals are kept incrementally as hard sum plus an ace flag, each
+ * worker owns its shoe and {@link SplittableRandom}, and shards run on the common pool.
+ *
+ * <pre>./gradlew blackjackSim -Phands=100000000 -Pdecks=4</pre>
+ * RTP is reported both per unit wagered (doubles and splits count) and per initial bet, each with a 95%
+ * confidence interval.
+ */
+public final class BlackjackSim {
+
+    // bets in half units so surrender stays integral
+    private static final int BET = 2;
+
+    private static final byte HIT = 'H';
+    private static final byte STAND = 'S';
+    private static final byte DOUBLE = 'D';      // double, else hit
+    private static final byte DOUBLE_STAND = 'X'; // double, else stand
+    private static final byte SPLIT = 'P';
+    private static final byte SURRENDER = 'R';   // surrender, else hit
+
+    // columns: dealer up card 2..9, T, A. Basic strategy for S17, no double after split, late surrender.
+    private static final byte[][] HARD = new byte[22][];
+    private static final byte[][] SOFT = new byte[22][];
+    private static final byte[][] PAIR = new byte[11][];
+
+    static {
+        for (int t = 0; t <= 21; t++) {
+            HARD[t] = row(t <= 8 ? "HHHHHHHHHH" : t >= 17 ? "SSSSSSSSSS" : switch (t) {
+                case 9 -> "HDDDDHHHHH";
+                case 10 -> "DDDDDDDDHH";
+                case 11 -> "DDDDDDDDDH";
+                case 12 -> "HHSSSHHHHH";
+                case 15 -> "SSSSSHHHRH";
+                case 16 -> "SSSSSHHRRR";
+                default -> "SSSSSHHHHH";
+            });
+            SOFT[t] = row(t >= 19 ? "SSSSSSSSSS" : switch (t) {
+                case 12, 13, 14 -> "HHHDDHHHHH";
+                case 15, 16 -> "HHDDDHHHHH";
+                case 17 -> "HDDDDHHHHH";
+                default -> "SXXXXSSHHH";
+            });
+        }
+        PAIR[1] = row("PPPPPPPPPP");
+        PAIR[2] = row("HHPPPPHHHH");
+        PAIR[3] = PAIR[2];
+        PAIR[4] = row("HHHHHHHHHH");
+        PAIR[5] = HARD[10];
+        PAIR[6] = row("HPPPPHHHHH");
+        PAIR[7] = row("PPPPPPHHHH");
+        PAIR[8] = row("PPPPPPPPPP");
+        PAIR[9] = row("PPPPPSPPSS");
+        PAIR[10] = row("SSSSSSSSSS");
+    }
+
+    private BlackjackSim() {
+    }
+
+    public static void main(String[] args) {
+        long hands = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        int decks = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        double penetration = args.length > 2 ? Double.parseDouble(args[2]) : Shoe.DEFAULT_PENETRATION;
+        int workers = args.length > 3 ? Integer.parseInt(args[3]) : ForkJoinPool.getCommonPoolParallelism();
+        Report report = run(hands, decks, penetration, Math.max(1, workers), new SplittableRandom().nextLong());
+        report.print(System.out);
+    }
+
+    public static Report run(long hands, int decks, double penetration, int workers, long seed) {
+        if (penetration <= 0.0 || penetration > 1.0) {
+            throw new IllegalArgumentException("penetration must be in (0,1]");
+        }
+        SplittableRandom seeds = new SplittableRandom(seed);
+        List<ForkJoinTask<Stats>> tasks = new ArrayList<>(workers);
+        long started = System.nanoTime();
+        for (int w = 0; w < workers; w++) {
+            long share = hands / workers + (w < hands % workers ? 1 : 0);
+            Table table = new Table(Math.max(1, decks), penetration, seeds.split());
+            tasks.add(ForkJoinPool.commonPool().submit(() -> table.play(share)));
+        }
+        Stats total = new Stats();
+        for (ForkJoinTask<Stats> task : tasks) {
+            total.merge(task.join());
+        }
+        return new Report(total, decks, penetration, workers, System.nanoTime() - started);
+    }
+
+    private static byte[] row(String actions) {
+        return actions.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // one worker: its own shoe of blackjack values (1 = ace, 10 = ten-valued) and RNG
+    private static final class Table {
+        private final byte[] shoe;
+        private final int cutCard;
+        private final SplittableRandom random;
+        private int cursor;
+
+        // split leaves at most two hands
+        private final int[] hard = new int[2];
+        private final boolean[] ace = new boolean[2];
+        private final int[] bet = new int[2];
+
+        Table(int decks, double penetration, SplittableRandom random) {
+            this.shoe = new byte[Card.COUNT * decks];
+            for (int i = 0; i < shoe.length; i++) {
+                int rank = (i % Card.COUNT) >> 2;
+                shoe[i] = (byte) (rank == Card.Rank.ACE.ordinal() ? 1 : Math.min(10, rank + 2));
+            }
+            this.cutCard = Math.min(shoe.length, (int) Math.round(shoe.length * penetration));
+            this.random = random;
+            shuffle();
+        }
+
+        Stats play(long hands) {
+            Stats stats = new Stats();
+            for (long h = 0; h < hands; h++) {
+                round(stats);
+            }
+            return stats;
+        }
+
+        private void round(Stats stats) {
+            if (cursor >= cutCard) {
+                shuffle();
+            }
+            int p1 = draw();
+            int up = draw();
+            int p2 = draw();
+            int hole = draw();
+            int upCol = up == 1 ? 9 : up - 2;
+            int hands = 1;
+            hard[0] = p1 + p2;
+            ace[0] = p1 == 1 || p2 == 1;
+            bet[0] = BET;
+
+            byte first = p1 == p2 ? PAIR[p1][upCol] : (ace[0] && hard[0] <= 11 ? SOFT : HARD)[best(0)][upCol];
+            if (first == SURRENDER) {
+                stats.record(BET, BET / 2);
+                stats.surrenders++;
+                return;
+            }
+            if (first == SPLIT) {
+                stats.splits++;
+                hands = 2;
+                hard[1] = p2;
+                ace[1] = p2 == 1;
+                bet[1] = BET;
+                hard[0] = p1;
+                ace[0] = p1 == 1;
+                hit(0);
+                hit(1);
+                playOut(0, upCol);
+                playOut(1, upCol);
+            } else if (first == DOUBLE || first == DOUBLE_STAND) {
+                stats.doubles++;
+                bet[0] = 2 * BET;
+                hit(0);
+            } else if (first == HIT) {
+                hit(0);
+                playOut(0, upCol);
+            }
+
+            int dealerHard = up + hole;
+            boolean dealerAce = up == 1 || hole == 1;
+            while (total(dealerHard, dealerAce) < 17) {
+                int c = draw();
+                dealerHard += c;
+                dealerAce |= c == 1;
+            }
+            int dealer = total(dealerHard, dealerAce);
+            if (dealer > 21) {
+                stats.dealerBusts++;
+            }
+            int wagered = 0;
+            int returned = 0;
+            for (int i = 0; i < hands; i++) {
+                int player = best(i);
+                wagered += bet[i];
+                if (player > 21) {
+                    stats.playerBusts++;
+                } else if (dealer > 21 || player > dealer) {
+                    returned += 2 * bet[i];
+                } else if (player == dealer) {
+                    returned += bet[i];
+                }
+            }
+            stats.record(wagered, returned);
+        }
+
+        // hit/stand only: after a split (no DAS) and after the first hit
+        private void playOut(int i, int upCol) {
+            while (best(i) < 21) {
+                byte a = (ace[i] && hard[i] <= 11 ? SOFT : HARD)[best(i)][upCol];
+                if (a == STAND || a == DOUBLE_STAND) {
+                    return;
+                }
+                hit(i);
+            }
+        }
+
+        private void hit(int i) {
+            int c = draw();
+            hard[i] += c;
+            ace[i] |= c == 1;
+        }
+
+        private int best(int i) {
+            return total(hard[i], ace[i]);
+        }
+
+        private static int total(int hard, boolean ace) {
+            return ace && hard <= 11 ? hard + 10 : hard;
+        }
+
+        private int draw() {
+            if (cursor == shoe.length) {
+                shuffle();   // 라운드 도중 소진: Shoe 와 같이 즉시 교체
+            }
+            return shoe[cursor++];
+        }
+
+        private void shuffle() {
+            for (int i = shoe.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                byte t = shoe[i];
+                shoe[i] = shoe[j];
+                shoe[j] = t;
+            }
+            cursor = 0;
+        }
+    }
+
+    private static final class Stats {
+        long rounds;
+        long wagered;
+        long returned;
+        // for the confidence intervals (per round, half units)
+        long wageredSq;
+        long returnedSq;
+        long cross;
+        long doubles;
+        long splits;
+        long surrenders;
+        long playerBusts;
+        long dealerBusts;
+
+        void record(int w, int r) {
+            rounds++;
+            wagered += w;
+            returned += r;
+            wageredSq += (long) w * w;
+            returnedSq += (long) r * r;
+            cross += (long) w * r;
+        }
+
+        void merge(Stats o) {
+            rounds += o.rounds;
+            wagered += o.wagered;
+            returned += o.returned;
+            wageredSq += o.wageredSq;
+            returnedSq += o.returnedSq;
+            cross += o.cross;
+            doubles += o.doubles;
+            splits += o.splits;
+            surrenders += o.surrenders;
+            playerBusts += o.playerBusts;
+            dealerBusts += o.dealerBusts;
+        }
+    }
+
+    public static final class Report {
+        private static final double Z95 = 1.96;
+
+        private final Stats stats;
+        private final int decks;
+        private final double penetration;
+        private final int workers;
+        private final long nanos;
+
+        private Report(Stats stats, int decks, double penetration, int workers, long nanos) {
+            this.stats = stats;
+            this.decks = decks;
+            this.penetration = penetration;
+            this.workers = workers;
+            this.nanos = nanos;
+        }
+
+        /** Returned / wagered, doubles and splits included. */
+        public double rtp() {
+            return (double) stats.returned / stats.wagered;
+        }
+
+        /** Half-width of the 95% interval of {@link #rtp()} (ratio estimator, delta method). */
+        public double rtpMargin() {
+            double r = rtp();
+            double residual = stats.returnedSq - 2 * r * stats.cross + r * r * stats.wageredSq;
+            return Z95 * Math.sqrt(Math.max(0.0, residual)) / stats.wagered;
+        }
+
+        /** Mean amount returned per initial bet (1.0 = break-even), i.e. 1 - house edge. */
+        public double returnPerHand() {
+            return 1.0 + (double) (stats.returned - stats.wagered) / stats.rounds / BET;
+        }
+
+        public double returnPerHandMargin() {
+            double n = stats.rounds;
+            double mean = (double) (stats.returned - stats.wagered) / n;
+            double sq = (stats.returnedSq - 2.0 * stats.cross + stats.wageredSq) / n;
+            return Z95 * Math.sqrt(Math.max(0.0, sq - mean * mean) / n) / BET;
+        }
+
+        public double handsPerSecond() {
+            return stats.rounds / (nanos / 1e9);
+        }
+
+        public void print(java.io.PrintStream out) {
+            double n = Math.max(1, stats.rounds);
+            out.printf("%,d hands, %d decks, penetration %.2f, %d workers, %.1fs, %,.0f hands/s%n",
+                    stats.rounds, decks, penetration, workers, nanos / 1e9, handsPerSecond());
+            out.printf("RTP per wagered    %.5f +/- %.5f%n", rtp(), rtpMargin());
+            out.printf("RTP per initial bet %.5f +/- %.5f  (house edge %.3f%%)%n",
+                    returnPerHand(), returnPerHandMargin(), 100 * (1 - returnPerHand()));
+            out.printf("double %.2f%%  split %.2f%%  surrender %.2f%%  player bust %.2f%%  dealer bust %.2f%%%n",
+                    100 * stats.doubles / n, 100 * stats.splits / n, 100 * stats.surrenders / n,
+                    100 * stats.playerBusts / n, 100 * stats.dealerBusts / n);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.cardgame.cardserver.sim;
+
+import com.cardgame.cardserver.core.SevenPokerGame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Headless AI-only Seven Card Stud: plays hands straight through {@link SevenPokerGame} (no REST layer,
+ * no wallet) on every core, one game and RNG per worker, and reports per-profile results, the pot size
+ * distribution and hands per second. Seats get profiles exactly as in a real room. Every worker's RNG,
+ * the AI's equity rollouts included, derives from the run seed, so a seed reproduces a run.
+ *
+ * <pre>./gradlew selfPlay -Phands=1000000 -Pseats=6 -PequityTrials=500</pre>
+ * The AI's equity rollouts dominate the cost; fewer trials (or 0, strength only) trade AI fidelity for speed.
+ */
+public final class SevenPokerSelfPlay {
+
+    private static final int ANTE = 10;
+    // pot histogram in antes; the last bucket collects everything above
+    private static final int POT_BUCKETS = 1_000;
+    // same as the live AI
+    private static final int DEFAULT_EQUITY_TRIALS = 500;
+
+    private SevenPokerSelfPlay() {
+    }
+
+    public static void main(String[] args) {
+        long hands = args.length > 0 ? Long.parseLong(args[0]) : 100_000L;
+        int seats = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int equityTrials = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_EQUITY_TRIALS;
+        int workers = args.length > 3 ? Integer.parseInt(args[3]) : ForkJoinPool.getCommonPoolParallelism();
+        if (seats < 2 || seats > 7) {
+            throw new IllegalArgumentException("seats must be 2..7 (7 cards each from one deck)");
+        }
+        Report report = run(hands, seats, equityTrials, Math.max(1, workers), new Random().nextLong());
+        report.print(System.out);
+    }
+
+    /** Runs on the common pool so the AI's equity rollouts work-steal alongside the workers. */
+    public static Report run(long hands, int seats, int equityTrials, int workers, long seed) {
+        Random seeds = new Random(seed);
+        List<ForkJoinTask<Stats>> tasks = new ArrayList<>(workers);
+        long started = System.nanoTime();
+        for (int w = 0; w < workers; w++) {
+            long share = hands / workers + (w < hands % workers ? 1 : 0);
+            long workerSeed = seeds.nextLong();
+            tasks.add(ForkJoinPool.commonPool().submit(() -> play(share, seats, equityTrials, workerSeed)));
+        }
+        Stats total = new Stats();
+        for (ForkJoinTask<Stats> task : tasks) {
+            total.merge(task.join());
+        }
+        return new Report(total, seats, equityTrials, workers, System.nanoTime() - started);
+    }
+
+    private static Stats play(long hands, int seats, int equityTrials, long seed) {
+        SevenPokerGame game = new SevenPokerGame(new Random(seed), false, equityTrials);
+        SevenPokerGame.State state = game.createState();
+        List<String> users = new ArrayList<>(seats);
+        for (int i = 0; i < seats; i++) {
+            users.add("AI_" + i);
+        }
+        Stats stats = new Stats();
+        for (long h = 0; h < hands; h++) {
+            game.start(state, users, ANTE);
+            while (state.inProgress) {
+                if (!game.aiStep(state)) {
+                    game.next(state);
+                }
+            }
+            stats.record(state);
+        }
+        return stats;
+    }
+
+    private static final class Stats {
+        // profile -> {seats, wins, folds, net chips}
+        final Map<String, long[]> profiles = new TreeMap<>();
+        final long[] pots = new long[POT_BUCKETS + 1];
+        long hands;
+        long showdowns;
+
+        void record(SevenPokerGame.State state) {
+            hands++;
+            if (!state.showdownScores.isEmpty()) {
+                showdowns++;
+            }
+            pots[Math.min(POT_BUCKETS, state.settledPot / ANTE)]++;
+            for (SevenPokerGame.Side side : state.players.values()) {
+                long[] row = profiles.computeIfAbsent(side.profileName(), k -> new long[4]);
+                row[0]++;
+                if (side.winner) {
+                    row[1]++;
+                }
+                if (side.folded) {
+                    row[2]++;
+                }
+                row[3] += (side.payout == null ? 0 : side.payout) - side.contributed;
+            }
+        }
+
+        void merge(Stats other) {
+            hands += other.hands;
+            showdowns += other.showdowns;
+            for (int i = 0; i < pots.length; i++) {
+                pots[i] += other.pots[i];
+            }
+            other.profiles.forEach((name, row) -> {
+                long[] mine = profiles.computeIfAbsent(name, k -> new long[4]);
+                for (int i = 0; i < row.length; i++) {
+                    mine[i] += row[i];
+                }
+            });
+        }
+    }
+
+    public static final class Report {
+        private final Stats stats;
+        private final int seats;
+        private final int equityTrials;
+        private final int workers;
+        private final long nanos;
+
+        private Report(Stats stats, int seats, int equityTrials, int workers, long nanos) {
+            this.stats = stats;
+            this.seats = seats;
+            this.equityTrials = equityTrials;
+            this.workers = workers;
+            this.nanos = nanos;
+        }
+
+        public double handsPerSecond() {
+            return stats.hands / (nanos / 1e9);
+        }
+
+        /** Pot size in antes at quantile {@code q} (0..1). */
+        public int potQuantile(double q) {
+            long target = (long) Math.ceil(q * stats.hands);
+            long seen = 0;
+            for (int i = 0; i < stats.pots.length; i++) {
+                seen += stats.pots[i];
+                if (seen >= Math.max(1, target)) {
+                    return i;
+                }
+            }
+            return POT_BUCKETS;
+        }
+
+        public void print(java.io.PrintStream out) {
+            out.printf("%,d hands, %d seats, equity %d trials, %d workers, %.1fs, %,.0f hands/s, showdown %.1f%%%n",
+                    stats.hands, seats, equityTrials, workers, nanos / 1e9, handsPerSecond(),
+                    100.0 * stats.showdowns / Math.max(1, stats.hands));
+            out.printf("pot (antes): p10 %d  p50 %d  p90 %d  p99 %d%n",
+                    potQuantile(0.10), potQuantile(0.50), potQuantile(0.90), potQuantile(0.99));
+            out.printf("%-10s %12s %8s %8s %14s%n", "profile", "seats", "win%", "fold%", "net/hand(ante)");
+            stats.profiles.forEach((name, row) -> out.printf("%-10s %,12d %7.2f%% %7.2f%% %14.3f%n",
+                    name, row[0], 100.0 * row[1] / row[0], 100.0 * row[2] / row[0],
+                    (double) row[3] / row[0] / ANTE));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.cardgame.cardserver.util;
+import com.cardgame.cardserver.core.Card;
+import java.util.*;
+/** Immutable {rank, suit} maps for all 52 cards plus the face-down card, built once and shared by every response. */
+public final class CardDto {
+    private CardDto(){}
+    public static final Map<String,Object> BACK = Map.of("rank","BACK","suit","");
+    private static final List<Map<String,Object>> TABLE;
+    static {
+        List<Map<String,Object>> t = new ArrayList<>(Card.COUNT);
+        for(int i=0; i<Card.COUNT; i++){ Card c = Card.of(i); t.add(Map.of("rank", c.rankStr(), "suit", c.suitStr())); }
+        TABLE = List.copyOf(t);
+    }
+    public static Map<String,Object> of(Card c){ return TABLE.get(c.index()); }
+    public static List<Map<String,Object>> list(List<Card> cards){
+        List<Map<String,Object>> out = new ArrayList<>(cards.size());
+        for(int i=0; i<cards.size(); i++) out.add(of(cards.get(i)));
+        return out;
+    }
+}
@@ -0,0 +1,154 @@
+package com.cardgame.cardserver.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed wheel timer for coarse timeouts (idle expiry, not precise scheduling). One daemon thread
+ * advances a ring of buckets every {@code tickMillis}; a timeout lands in bucket
+ * {@code deadline tick mod wheel size} with the number of full turns still to wait, so scheduling and
+ * each tick are O(1) apart from the timeouts that are actually due. New timeouts go through a
+ * lock-free queue and are only ever placed into buckets by the timer thread. Tasks run on the timer
+ * thread and must be short; a task that throws is dropped.
+ */
+public final class HashedWheelTimer implements AutoCloseable {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final long tickMillis;
+    private final Timeout[] wheel;   // per-bucket doubly linked list heads, timer thread only
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long start;
+    private volatile boolean closed;
+    private long tick;
+
+    public HashedWheelTimer(String name, long tickMillis, int wheelSize) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+        this.start = System.nanoTime();
+        this.worker = new Thread(this::run, name + "-" + THREADS.incrementAndGet());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline;   // ms since timer start
+        private long rounds;
+        private Timeout prev;
+        private Timeout next;
+        private int bucket = -1;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /** The task won't run; the slot is reclaimed when its bucket next comes round. */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout t = new Timeout(task, elapsed() + Math.max(0, delayMillis));
+        if (closed) {
+            t.cancel();
+            return t;
+        }
+        pending.add(t);
+        return t;
+    }
+
+    public long tickMillis() {
+        return tickMillis;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+
+    private long elapsed() {
+        return (System.nanoTime() - start) / 1_000_000L;
+    }
+
+    private void run() {
+        while (!closed) {
+            long due = (tick + 1) * tickMillis;
+            long sleep = due - elapsed();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            tick++;
+            placePending();
+            expire(wheel[(int) (tick & mask)]);
+        }
+    }
+
+    private void placePending() {
+        for (Timeout t; (t = pending.poll()) != null; ) {
+            if (t.cancelled) {
+                continue;
+            }
+            // never behind the current tick: anything already due fires on this one
+            long at = Math.max(tick, (t.deadline + tickMillis - 1) / tickMillis);
+            t.rounds = (at - tick) / wheel.length;
+            t.bucket = (int) (at & mask);
+            t.next = wheel[t.bucket];
+            if (t.next != null) {
+                t.next.prev = t;
+            }
+            wheel[t.bucket] = t;
+        }
+    }
+
+    private void expire(Timeout t) {
+        while (t != null) {
+            Timeout next = t.next;
+            if (t.cancelled) {
+                unlink(t);
+            } else if (t.rounds > 0) {
+                t.rounds--;
+            } else {
+                unlink(t);
+                try {
+                    t.task.run();
+                } catch (RuntimeException ignored) {
+                    // one failing task must not stop the wheel
+                }
+            }
+            t = next;
+        }
+    }
+
+    private void unlink(Timeout t) {
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            wheel[t.bucket] = t.next;
+        }
+        if (t.next != null) {
+            t.next.prev = t.prev;
+        }
+        t.prev = null;
+        t.next = null;
+    }
+}
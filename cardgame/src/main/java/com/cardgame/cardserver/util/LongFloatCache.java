@@ -0,0 +1,59 @@
+package com.cardgame.cardserver.util;
+
+/**
+ * Fixed-size long -> float cache with open addressing (linear probing over a short window).
+ * No boxing and no growth: when every slot in the window is taken, the home slot is overwritten.
+ * Not thread-safe; give each thread its own instance. Key 0 is reserved for empty slots.
+ */
+public final class LongFloatCache {
+
+    private static final int PROBES = 8;
+
+    private final long[] keys;
+    private final float[] values;
+    private final int mask;
+
+    public LongFloatCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity - 1)) << 1;
+        keys = new long[size];
+        values = new float[size];
+        mask = size - 1;
+    }
+
+    /** Cached value for {@code key}, or NaN when absent. */
+    public float get(long key) {
+        int slot = slot(key);
+        for (int i = 0; i < PROBES; i++, slot = (slot + 1) & mask) {
+            long k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == 0L) {
+                break;
+            }
+        }
+        return Float.NaN;
+    }
+
+    public void put(long key, float value) {
+        if (key == 0L) {
+            throw new IllegalArgumentException("key 0 is reserved");
+        }
+        int home = slot(key);
+        int slot = home;
+        for (int i = 0; i < PROBES; i++, slot = (slot + 1) & mask) {
+            if (keys[slot] == 0L || keys[slot] == key) {
+                keys[slot] = key;
+                values[slot] = value;
+                return;
+            }
+        }
+        keys[home] = key;
+        values[home] = value;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
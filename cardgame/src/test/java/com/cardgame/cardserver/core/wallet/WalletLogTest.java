@@ -0,0 +1,129 @@
+package com.cardgame.cardserver.core.wallet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Crash recovery: the log is read back while still open (as a crash would leave it) after damaging one
+ * record in the middle of the active segment, or after a clean close with damaged snapshots.
+ */
+class WalletLogTest {
+
+    private static final long INITIAL = 100;
+    // "u1".."u4": length + crc + delta + 2 name bytes, padded to 8
+    private static final int RECORD = 24;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reservedButUnwrittenSlotKeepsLaterRecords() throws IOException {
+        WalletLog log = openWithFourRecords();
+        try {
+            // the second append reserved its slot and crashed before writing anything
+            overwrite(activeSegment(), RECORD, new byte[RECORD]);
+
+            assertEquals(Map.of("u1", 101L, "u3", 104L, "u4", 108L), WalletLog.read(dir, INITIAL));
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    void tornRecordIsSkipped() throws IOException {
+        WalletLog log = openWithFourRecords();
+        try {
+            // the third append wrote its length but not the rest
+            overwrite(activeSegment(), 2 * RECORD + 8, new byte[RECORD - 8]);
+
+            assertEquals(Map.of("u1", 101L, "u2", 102L, "u4", 108L), WalletLog.read(dir, INITIAL));
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    void reopenRecoversEveryBalance() {
+        openWithFourRecords().close();
+
+        Map<String, AtomicLong> reopened = new ConcurrentHashMap<>();
+        WalletLog.open(options(), reopened, INITIAL).close();
+        assertEquals(Map.of("u1", 101L, "u2", 102L, "u3", 104L, "u4", 108L), balances(reopened));
+    }
+
+    @Test
+    void unreadableSnapshotFallsBackToThePreviousOne() throws IOException {
+        openWithFourRecords().close();
+
+        overwrite(snapshot(-1), 0, new byte[8]);
+        assertEquals(Map.of("u1", 101L, "u2", 102L, "u3", 104L, "u4", 108L), WalletLog.read(dir, INITIAL));
+    }
+
+    @Test
+    void noReadableSnapshotRefusesToStartFromZero() throws IOException {
+        openWithFourRecords().close();
+
+        overwrite(snapshot(-1), 0, new byte[8]);
+        overwrite(snapshot(-2), 0, new byte[8]);
+        assertThrows(UncheckedIOException.class, () -> WalletLog.read(dir, INITIAL));
+    }
+
+    private static Map<String, Long> balances(Map<String, AtomicLong> cells) {
+        Map<String, Long> out = new HashMap<>();
+        cells.forEach((user, cell) -> out.put(user, cell.get()));
+        return out;
+    }
+
+    private WalletLog openWithFourRecords() {
+        Map<String, AtomicLong> cells = new ConcurrentHashMap<>();
+        WalletLog log = WalletLog.open(options(), cells, INITIAL);
+        for (int i = 1; i <= 4; i++) {
+            String user = "u" + i;
+            log.add(user, cells.computeIfAbsent(user, k -> new AtomicLong(INITIAL)), 1L << (i - 1));
+        }
+        return log;
+    }
+
+    private WalletLog.Options options() {
+        return new WalletLog.Options(dir, 1 << 16, 1, 1, 3_600_000);
+    }
+
+    private Path activeSegment() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted()
+                    .reduce((a, b) -> b).orElseThrow();
+        }
+    }
+
+    // snapshot(-1) is the newest, snapshot(-2) the one before it
+    private Path snapshot(int fromEnd) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> snapshots = files.filter(p -> p.getFileName().toString().startsWith("snapshot-"))
+                    .sorted().toList();
+            return snapshots.get(snapshots.size() + fromEnd);
+        }
+    }
+
+    private static void overwrite(Path file, int at, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), at);
+        }
+    }
+}
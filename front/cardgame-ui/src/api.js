@@ -4,3 +4,34 @@ export async function jpost(p, opts={}) {
   const r = await fetch(base + p, { method:'POST', ...opts });
   return r.json();
 }
+
+// 방 상태 푸시 구독: 서버가 액션마다 /state 와 같은 응답을 보내준다. 끊기면 재접속.
+export function subscribeRoom(game, roomId, viewer, onDetail){
+  const url = new URL(base + '/api/ws/rooms', location.href)
+  url.protocol = url.protocol === 'https:' ? 'wss:' : 'ws:'
+  url.search = new URLSearchParams({ game, roomId, viewer: viewer ?? '' }).toString()
+  let ws = null, closed = false, retry = 500, timer = null
+  const sub = {
+    get live(){ return !!ws && ws.readyState === WebSocket.OPEN },
+    close(){ closed = true; clearTimeout(timer); if(ws) ws.close() }
+  }
+  function connect(){
+    timer = null
+    if(closed) return   // 백오프 중에 close() 된 경우
+    ws = new WebSocket(url)
+    ws.onopen = () => { retry = 500 }
+    ws.onmessage = (e) => {
+      try{
+        const frame = JSON.parse(e.data)
+        onDetail(frame.detail || frame)
+      }catch(err){ console.error(err) }
+    }
+    ws.onclose = () => {
+      if(closed) return
+      timer = setTimeout(connect, retry)
+      retry = Math.min(retry * 2, 10000)
+    }
+  }
+  connect()
+  return sub
+}